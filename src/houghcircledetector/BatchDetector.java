@@ -0,0 +1,318 @@
+package houghcircledetector;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+/**
+ * command line driver for the detection engine. runs the whole pipeline over a list of image files (or directories
+ * of images) and writes each image out with the detected circles highlighted. only java.awt/javax.imageio are used for
+ * reading and writing the images so no JavaFX is needed on the classpath, run it with:
+ * java -Djava.awt.headless=true -cp HoughCircleDetector.jar houghcircledetector.BatchDetector [options] image...
+ * with -q the images (and the frames of animated GIFs) are taken as the frames of one sequence instead, and run as a
+ * stream that follows the circles from frame to frame (see SequenceDetector). with -z each image is read and searched a
+ * tile at a time (see TiledDetector), and the circles are written to a text file rather than over the image
+ * @author Ntokozo Zwane
+ */
+public class BatchDetector {
+
+    private static final String USAGE =
+        "usage: BatchDetector [options] <image|directory>...\n" +
+        "  -y <luma>      grey weights of the channels: fx, rec601, rec709 or average (default: fx)\n" +
+        "  -k <size>      smoothing kernel size (odd, 1-21)\n" +
+        "  -s <sigma>     standard deviation of the Gaussian\n" +
+        "  -h <value>     high threshold (0-255)\n" +
+        "  -l <value>     low threshold (0-255)\n" +
+        "  -a <radius>    smallest radius (default: 3)\n" +
+        "  -b <radius>    largest radius (default: half the smaller side of the image)\n" +
+        "  -d <step>      only search every step-th radius (default: 1)\n" +
+        "  -t <tuner>     peak threshold, a circle needs 1/tuner of its points on edges (1-100, default: 1.5)\n" +
+        "  -n <count>     the most circles per image (default: 64)\n" +
+        "  -o <dir>       output directory (default: next to the input)\n" +
+        "  -c <rrggbb>    colour of the circle outlines (default: ff0000)\n" +
+        "  -p <threads>   number of threads to run on (default: all cores)\n" +
+        "  -e             write the edge detected image instead of the circles\n" +
+        "  -g             use the gradient directed Hough transform\n" +
+        "  -m             use the coarse to fine (multi-resolution) pyramid search\n" +
+        "  -r             use the randomized Hough transform\n" +
+        "  -x             list the circles found (x y radius score) on the standard output\n" +
+        "  -q             take the images as the frames of one sequence, following the circles from frame to frame\n" +
+        "  -j <frames>    with -q, run the full transform every this many frames (default: 10)\n" +
+        "  -w <pixels>    with -q, the furthest a centre is followed from one frame to the next (default: 8)\n" +
+        "  -z <pixels>    read and search the images in tiles of this size, for images too large for memory (needs -b)";
+
+    private DetectionConfig config = DetectionConfig.DEFAULT;
+    private File outDir = null;
+    private int colour = 0xFFFF0000;
+    private boolean edgesOnly = false;
+    private boolean directed = false;
+    private boolean pyramid = false;
+    private boolean randomized = false;
+    private boolean listCircles = false;
+    private boolean sequence = false;
+    private int rescan = SequenceDetector.RESCAN;
+    private int window = CircleTracker.WINDOW;
+    // the side of the tiles, 0 to process whole images
+    private int tile = 0;
+    private final List<File> inputs = new ArrayList<>();
+
+    private final CircleDetector detector = new CircleDetector();
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        BatchDetector batch = new BatchDetector();
+        try{
+            batch.parseArgs(args);
+        }catch(IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if(batch.sequence){
+            try{
+                batch.runSequence();
+            }catch(IOException | RuntimeException | InterruptedException e){
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        int failed = 0;
+        for(File in : batch.inputs){
+            try{
+                long start = System.nanoTime();
+                File out = batch.process(in);
+                System.out.println(in + " -> " + out + " (" + (System.nanoTime() - start)/1000000 + " ms)");
+            }catch(IOException | RuntimeException e){
+                System.err.println(in + ": " + e.getMessage());
+                failed++;
+            }
+        }
+        if(failed > 0){System.exit(1);}
+    }
+
+    /**
+     * read the options and the list of input files
+     * @param args the command line arguments
+     */
+    void parseArgs(String[] args){
+        DetectionConfig.Builder builder = DetectionConfig.builder();
+        for(int i = 0; i < args.length; i++){
+            String arg = args[i];
+            if(!arg.startsWith("-")){addInput(new File(arg)); continue;}
+            if(arg.equals("-e")){edgesOnly = true; continue;}
+            if(arg.equals("-g")){directed = true; continue;}
+            if(arg.equals("-m")){pyramid = true; continue;}
+            if(arg.equals("-r")){randomized = true; continue;}
+            if(arg.equals("-x")){listCircles = true; continue;}
+            if(arg.equals("-q")){sequence = true; continue;}
+            if(i + 1 >= args.length){throw new IllegalArgumentException("missing value for " + arg);}
+            String value = args[++i];
+            try{
+                switch(arg){
+                    case "-y":
+                        builder.luma(luma(value));
+                        break;
+                    case "-k":
+                        builder.kernelSize(Integer.parseInt(value));
+                        break;
+                    case "-s":
+                        builder.sigma(Double.parseDouble(value));
+                        break;
+                    case "-h":
+                        builder.highThreshold(Integer.parseInt(value));
+                        break;
+                    case "-l":
+                        builder.lowThreshold(Integer.parseInt(value));
+                        break;
+                    case "-a":
+                        builder.minRadius(Integer.parseInt(value));
+                        break;
+                    case "-b":
+                        builder.maxRadius(Integer.parseInt(value));
+                        break;
+                    case "-d":
+                        builder.radiusStep(Integer.parseInt(value));
+                        break;
+                    case "-t":
+                        builder.tuner(Double.parseDouble(value));
+                        break;
+                    case "-n":
+                        builder.maxCircles(Integer.parseInt(value));
+                        break;
+                    case "-o":
+                        outDir = new File(value);
+                        break;
+                    case "-c":
+                        colour = 0xFF000000 | Integer.parseInt(value, 16);
+                        break;
+                    case "-j":
+                        rescan = Integer.parseInt(value);
+                        if(rescan < 1){throw new IllegalArgumentException("the rescan interval must be at least 1");}
+                        break;
+                    case "-w":
+                        window = Integer.parseInt(value);
+                        if(window < 0){throw new IllegalArgumentException("the window must be at least 0");}
+                        break;
+                    case "-z":
+                        tile = Integer.parseInt(value);
+                        if(tile < 1){throw new IllegalArgumentException("the tile size must be at least 1");}
+                        break;
+                    case "-p":
+                        int threads = Integer.parseInt(value);
+                        if(threads < 1){throw new IllegalArgumentException("the number of threads must be at least 1");}
+                        detector.setParallelism(threads);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + arg);
+                }
+            }catch(NumberFormatException e){
+                throw new IllegalArgumentException("invalid value for " + arg + ": " + value);
+            }
+        }
+        config = builder.build();
+        if(inputs.isEmpty()){throw new IllegalArgumentException("no input images");}
+        if(sequence && (edgesOnly || directed || pyramid || randomized)){throw new IllegalArgumentException("-q can not be used with -e, -g, -m or -r");}
+        if(tile > 0 && (edgesOnly || directed || pyramid || randomized || sequence)){throw new IllegalArgumentException("-z can not be used with -e, -g, -m, -r or -q");}
+        // the region of a tile reaches the largest radius past it, by default half the image
+        if(tile > 0 && config.maxRadius == DetectionConfig.AUTO){throw new IllegalArgumentException("-z needs the largest radius, set with -b");}
+    }
+
+    private static Luma luma(String value){
+        for(Luma luma : Luma.values()){
+            if(luma.name().equalsIgnoreCase(value)){return luma;}
+        }
+        throw new IllegalArgumentException("unknown grey weights " + value);
+    }
+
+    /**
+     * add an input file, directories are expanded to the image files they contain
+     * @param file the file or directory
+     */
+    private void addInput(File file){
+        if(file.isDirectory()){
+            File[] files = file.listFiles();
+            if(files == null){return;}
+            Arrays.sort(files);
+            for(File f : files){
+                if(f.isFile() && ImageIO.getImageReadersBySuffix(suffix(f)).hasNext()){inputs.add(f);}
+            }
+        }else{inputs.add(file);}
+    }
+
+    private static String suffix(File file){
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase();
+    }
+
+    /**
+     * run the detection on one image and write out the result as a .png file (or, in tiles, as a .txt file listing
+     * the circles)
+     * @param in the input image
+     * @return the file the result was written to
+     * @throws IOException if the image could not be read or written
+     */
+    File process(File in) throws IOException {
+        if(tile > 0){
+            List<Circle> circles = new TiledDetector(detector, config, tile).detect(in);
+            List<String> lines = new ArrayList<>();
+            for(Circle c : circles){
+                if(listCircles){System.out.println(in + ": " + c);}
+                lines.add(c.toString());
+            }
+            File out = output(in, 0, "_circles.txt");
+            Files.write(out.toPath(), lines);
+            return out;
+        }
+        BufferedImage image = ImageIO.read(in);
+        if(image == null){throw new IOException("not a readable image");}
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+
+        if(edgesOnly){
+            byte[] canny = detector.cannyEdge(argb, width, height, config).plane.data;
+            for(int i = 0; i < argb.length; i++){
+                int grey = canny[i] & 0xFF;
+                argb[i] = 0xFF000000 | grey << 16 | grey << 8 | grey;
+            }
+        }else{
+            List<Circle> circles = directed ? detector.detectDirected(argb, width, height, config) :
+                    pyramid ? detector.detectPyramid(argb, width, height, config) :
+                    randomized ? detector.detectRandomized(argb, width, height, config) : detector.detect(argb, width, height, config);
+            if(listCircles){
+                for(Circle c : circles){System.out.println(in + ": " + c);}
+            }
+            // write the circles over the original image
+            PlaneRenderer.overlay(argb, CircleDetector.draw(circles, width, height), colour);
+        }
+        return write(argb, width, height, in, 0);
+    }
+
+    /**
+     * write out a result as a .png file, in the output directory or next to the input
+     * @param argb the pixels of the result in argb form, row by row
+     * @param in the input image
+     * @param image the number of the image in the input file, it is added to the name of the file if it is not 0
+     * @return the file the result was written to
+     * @throws IOException if the file could not be written
+     */
+    private File write(int[] argb, int width, int height, File in, int image) throws IOException {
+        BufferedImage output = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        output.setRGB(0, 0, width, height, argb, 0, width);
+        File out = output(in, image, (edgesOnly ? "_edges" : "_circles") + ".png");
+        ImageIO.write(output, "png", out);
+        return out;
+    }
+
+    /**
+     * @param in the input image
+     * @param image the number of the image in the input file, it is added to the name of the file if it is not 0
+     * @param ending the end of the name of the file
+     * @return the file a result is written to, in the output directory or next to the input
+     * @throws IOException if the output directory could not be created
+     */
+    private File output(File in, int image, String ending) throws IOException {
+        String name = in.getName();
+        int dot = name.lastIndexOf('.');
+        if(dot > 0){name = name.substring(0, dot);}
+        if(image > 0){name += "_" + image;}
+        File dir = outDir != null ? outDir : in.getAbsoluteFile().getParentFile();
+        if(!dir.isDirectory() && !dir.mkdirs()){throw new IOException("unable to create " + dir);}
+        return new File(dir, name + ending);
+    }
+
+    /**
+     * run the inputs as the frames of one sequence, writing out every frame with its circles highlighted. the frames
+     * are read, edge detected and searched at the same time (see SequenceDetector)
+     * @throws IOException if a frame could not be read or written
+     * @throws InterruptedException if the run is interrupted
+     */
+    void runSequence() throws IOException, InterruptedException {
+        SequenceDetector detection = new SequenceDetector(detector, config, window, CircleTracker.BAND, rescan);
+        int[] frames = new int[1];
+        long start = System.nanoTime();
+        try(FrameSequence sequence = new FrameSequence(inputs)){
+            detection.run(sequence, (frame, circles, rescanned) -> {
+                String name = frame.file + (frame.image > 0 ? "#" + frame.image : "");
+                if(listCircles){
+                    for(Circle c : circles){System.out.println(name + ": " + c);}
+                }
+                PlaneRenderer.overlay(frame.argb, CircleDetector.draw(circles, frame.width, frame.height), colour);
+                File out = write(frame.argb, frame.width, frame.height, frame.file, frame.image);
+                System.out.println(name + " -> " + out + (rescanned ? " (full)" : " (tracked)"));
+                frames[0]++;
+            });
+        }
+        long ms = Math.max(1, (System.nanoTime() - start)/1000000);
+        System.out.println(frames[0] + " frames in " + ms + " ms (" + String.format("%.1f", frames[0]*1000.0/ms) + " frames/s)");
+    }
+}
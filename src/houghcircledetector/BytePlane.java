@@ -0,0 +1,24 @@
+package houghcircledetector;
+
+/**
+ * an image plane of unsigned 8 bit values (0-255), used for the grey, smoothed and edge images
+ * @author Ntokozo Zwane
+ */
+public final class BytePlane extends ImagePlane {
+    
+    public final byte[] data;
+    
+    public BytePlane(int width, int height){
+        super(width, height);
+        data = new byte[width*height];
+    }
+    
+    @Override
+    public int get(int index){
+        return data[index] & 0xFF;
+    }
+    
+    public void set(int x, int y, int value){
+        data[index(x, y)] = (byte) value;
+    }
+}
@@ -1,11 +1,10 @@
 package houghcircledetector;
 
-import java.awt.Point;
-import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelFormat;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * methods for applying Canny Edge Detection to identify edges on the objects. the implementation
@@ -14,372 +13,393 @@ import javafx.scene.paint.Color;
  * 2. apply sobel operator
  * 3. nonmaximal supression
  * 4. hysteresis
+ * none of the methods depend on JavaFX, each stage works on plain pixel arrays and returns its result so that
+ * the detector can also be run headless (see CircleDetector).
+ * given a pool, every stage splits the image into horizontal bands that are processed concurrently. a band reads the
+ * rows around it that it needs (its halo) from the input of the stage, so the output does not depend on the number of
+ * bands. every stage checks the job it runs for (see Job) before each row, so a cancelled job stops within a row
  * @author Ntokozo Zwane
  */
 public class CannyEdge {
-    final double ANGLE_45 = Math.PI/4;
-    final double ANGLE_90 = Math.PI/2;
-    final double ANGLE_135 = (3*Math.PI)/4;
-    final double ANGLE_180 = Math.PI;
+    // the direction classes of the derivatives. each class names the two neighbours that a pixel is compared
+    // against in nonmaximal suppression (the neighbours that lie along the derivative)
+    static final int DIR_0 = 0;   // (x, y+1) and (x, y-1)
+    static final int DIR_45 = 1;  // (x-1, y+1) and (x+1, y-1)
+    static final int DIR_90 = 2;  // (x+1, y) and (x-1, y)
+    static final int DIR_135 = 3; // (x+1, y+1) and (x-1, y-1)
     
-    // high and low thresholds used when applying nonmaximal supression
-    static int THRESHOLD_HIGH = 200;
-    static int THRESHOLD_LOW = 100;
-    // smoothing kernel size
-    static int KERNEL_SIZE = 7;
-    // the standard deviation used for calculating the Gaussian
-    static double SIGMA = 1.0;
+    // tan(22.5 degrees) as a fixed point number with TAN_SHIFT fractional bits, used for putting the
+    // derivatives into direction classes without any trigonometry
+    static final int TAN_SHIFT = 30;
+    static final long TAN_22_5 = 444758426L;
     
-    // the kernel for the x directional derivative
-    final int[][] Gx = {
-        {-1, 0, 1},
-        {-2, 0, 2},
-        {-1, 0, 1}
-    };
+    // the fewest rows worth processing as a band of their own
+    static final int MIN_BAND_ROWS = 32;
     
-    // the kernel for the y directional derivative
-    final int[][] Gy = {
-        {1, 2, 1},
-        {0, 0, 0},
-        {-1, -2, -1}
-    };
+    // the pool the bands are processed on, null to process the whole image on the calling thread
+    private final ForkJoinPool pool;
+    
+    // the luma weights, kernel, sigma and thresholds used
+    private final DetectionConfig config;
+    
+    // the job the stages run for
+    private final Job job;
     
     /**
-     * normalize the image so that the rgb values are all the same
-     * @param imgObj the image object
-     * @return 
+     * process the whole image on the calling thread with the default parameters
      */
-    public int[] grayscale(ImageObject imgObj, ImageView imageView){
-        int[] buffer = new int[imgObj.getIntWidth()*imgObj.getIntHeight()];
-        WritableImage dest = new WritableImage(imgObj.getIntWidth( ),imgObj.getIntHeight( ));
-        PixelWriter pixWriter = dest.getPixelWriter();
-        for(int y = 0; y < imgObj.getIntHeight( ); y++){
-            for(int x = 0; x < imgObj.getIntWidth( ); x++){
-                pixWriter.setColor(x, y, imgObj.getPixelReader().getColor(x, y).grayscale());
-            }
-        }
-        dest.getPixelReader().getPixels(0, 0, imgObj.getIntWidth(), imgObj.getIntHeight(), PixelFormat.getIntArgbPreInstance(), buffer, 0, imgObj.getIntWidth());
-        
-        // render the image to the image viewer
-        if(imageView != null){
-            for(int y = 0; y < imgObj.getIntHeight(); y++){
-                for(int x = 0; x < imgObj.getIntWidth(); x++){
-                    pixWriter.setColor(x, y, imgObj.getColor(x, y).grayscale());
-                }
-            }
-            imageView.setImage(dest);
-            return null; // no buffer to be returned
-        }else{return buffer;}
+    public CannyEdge(){
+        this(DetectionConfig.DEFAULT, null);
     }
     
     /**
-     * construct the gaussean kernel for smoothing/filtering the image
-     * @return the k
+     * @param config the luma weights, kernel, sigma and thresholds to use
+     * @param pool the pool the bands of the image are processed on, null to process the whole image on the
+     * calling thread
      */
-    public double[][] constructKernel(){
-        double[][] kernel = new double[KERNEL_SIZE][KERNEL_SIZE];
-        double cons = 1.0/(2*ANGLE_180*SIGMA*SIGMA);
-        double denominator = 2*SIGMA*SIGMA;
-        for(int y = -KERNEL_SIZE/2, j = 0; y <= KERNEL_SIZE/2; y++, j++){
-            for(int x = -KERNEL_SIZE/2, i = 0; x <= KERNEL_SIZE/2; x++, i++){
-                kernel[i][j] = cons*Math.exp(-(x*x + y*y)/denominator);
-            }
+    public CannyEdge(DetectionConfig config, ForkJoinPool pool){
+        this(config, pool, Job.NONE);
+    }
+    
+    /**
+     * @param job the job the stages run for, it is checked before each row
+     * @see #CannyEdge(DetectionConfig, ForkJoinPool)
+     */
+    CannyEdge(DetectionConfig config, ForkJoinPool pool, Job job){
+        this.config = config;
+        this.pool = pool;
+        this.job = job;
+    }
+    
+    /**
+     * processes the rows from - to (exclusive) of an image
+     */
+    interface Band {
+        void run(int from, int to);
+    }
+    
+    /**
+     * split the rows of an image into bands, one per thread of the pool
+     * @param height the height of the image
+     * @return the first row of each band followed by the height
+     */
+    int[] bands(int height){
+        int bands = pool == null ? 1 : Math.max(1, Math.min(pool.getParallelism(), height/MIN_BAND_ROWS));
+        int[] bounds = new int[bands + 1];
+        for(int b = 0; b <= bands; b++){bounds[b] = (int) ((long) height*b/bands);}
+        return bounds;
+    }
+    
+    /**
+     * process the bands concurrently and wait for all of them to finish
+     * @param bounds the first row of each band followed by the height
+     * @param band the processing of a band
+     */
+    void runBands(int[] bounds, Band band){
+        if(bounds.length == 2){band.run(bounds[0], bounds[1]); return;}
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(bounds.length - 1);
+        for(int b = 0; b < bounds.length - 1; b++){
+            final int from = bounds[b], to = bounds[b + 1];
+            tasks.add(ForkJoinTask.adapt(() -> band.run(from, to)));
         }
-        return kernel;
+        for(ForkJoinTask<?> task : tasks){pool.execute(task);}
+        for(ForkJoinTask<?> task : tasks){task.join();}
     }
     
     /**
-     * 
-     * @param imgObj the source image object
-     * @param buffer the list of normalized pixel values. this is assumed to be in rgb form
-     * @param pixWriter
-     * @return 
+     * normalize the image so that the rgb values are all the same, using the luma weights of the configuration (by
+     * default the ones used by javafx.scene.paint.Color.grayscale()). the pixels are read straight from the argb
+     * array and only integer arithmetic is done per pixel (see Luma)
+     * @param argb the pixels of the image in (non premultiplied) argb form, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the grey value (0-255) of each pixel
      */
-    public int[][] sobelXOperator(ImageObject imgObj, int[][] buffer){
-        if(buffer == null){MainPanelController.handleError(0, "Do smoothing first");return null;}
-        int width = imgObj.getIntWidth();
-        int height = imgObj.getIntHeight();
-        
-        int[][] output = new int[width][height];
-
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                for(int i = -1, dx = 0; i <= 1; i++, dx++){
-                    for(int j = -1, dy = 0; j <= 1; j++, dy++){
-                        int xx = x + i; int yy = y + j;
-                        if(imgObj.inBounds(xx, yy)){
-                            output[x][y] += buffer[xx][yy] * Gx[dx][dy];
-                        }
-                    }
-                }
+    public BytePlane grayscale(int[] argb, int width, int height){
+        BytePlane output = new BytePlane(width, height);
+        byte[] out = output.data;
+        Luma luma = config.luma;
+        runBands(bands(height), (from, to) -> {
+            for(int y = from; y < to; y++){
+                job.check();
+                for(int i = y*width, n = i + width; i < n; i++){out[i] = (byte) luma.grey(argb[i]);}
             }
-        }
+        });
         return output;
     }
     
     /**
-     * 
-     * @param imgObj the source image object
-     * @param buffer the list of normalized pixel values. this is assumed to be in rgb form
-     * @param pixWriter
-     * @return 
+     * apply the sobel operator to the smoothed image. both derivatives are computed from the same 3x3 window
+     * and turned straight into the magnitude and the direction class of the derivative, so the derivatives
+     * themselves are never stored. pixels outside of the image count as 0.
+     * the direction class comes from comparing the slope of the derivative against tan(22.5) and tan(67.5)
+     * @param buffer the smoothed grey pixel values
+     * @return the magnitudes and directions of the derivatives
      */
-    public int[][] sobelYOperator(ImageObject imgObj, int[][] buffer){
-        if(buffer == null){MainPanelController.handleError(0, "Do smoothing first");return null;}
-        int width = imgObj.getIntWidth();
-        int height = imgObj.getIntHeight();
+    public Gradient gradient(BytePlane buffer){
+        if(buffer == null){throw new IllegalArgumentException("Do smoothing first");}
+        int width = buffer.width;
+        int height = buffer.height;
+        byte[] in = buffer.data;
+        ShortPlane magnitude = new ShortPlane(width, height);
+        BytePlane direction = new BytePlane(width, height);
+        short[] mag = magnitude.data;
+        byte[] dir = direction.data;
         
-        int[][] output = new int[width][height];
-
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                for(int i = -1, dx = 0; i <= 1; i++, dx++){
-                    for(int j = -1, dy = 0; j <= 1; j++, dy++){
-                        int xx = x + i; int yy = y + j;
-                        if(imgObj.inBounds(xx, yy)){
-                            output[x][y] += buffer[xx][yy] * Gy[dx][dy];
+        runBands(bands(height), (from, to) -> gradient(in, width, height, from, to, mag, dir, job));
+        return new Gradient(magnitude, direction);
+    }
+    
+    /**
+     * the gradient of the rows from - to, reading one row above and below them
+     */
+    private static void gradient(byte[] in, int width, int height, int from, int to, short[] mag, byte[] dir, Job job){
+        for(int y = from, index = from*width; y < to; y++){
+            job.check();
+            boolean borderRow = y == 0 || y == height - 1;
+            for(int x = 0; x < width; x++, index++){
+                int gx, gy;
+                if(borderRow || x == 0 || x == width - 1){
+                    // sum up the neighbours that are inside the image
+                    gx = 0; gy = 0;
+                    for(int j = -1; j <= 1; j++){
+                        for(int i = -1; i <= 1; i++){
+                            if(inBounds(x + i, y + j, width, height)){
+                                int grey = in[index + j*width + i] & 0xFF;
+                                gx += i*(2 - j*j)*grey;
+                                gy += j*(2 - i*i)*grey;
+                            }
                         }
                     }
+                }else{
+                    int above = index - width, below = index + width;
+                    int tl = in[above - 1] & 0xFF, t = in[above] & 0xFF, tr = in[above + 1] & 0xFF;
+                    int l = in[index - 1] & 0xFF, r = in[index + 1] & 0xFF;
+                    int bl = in[below - 1] & 0xFF, b = in[below] & 0xFF, br = in[below + 1] & 0xFF;
+                    gx = (tr + 2*r + br) - (tl + 2*l + bl);
+                    gy = (bl + 2*b + br) - (tl + 2*t + tr);
                 }
+                mag[index] = (short) Math.sqrt(gx*gx + gy*gy);
+                dir[index] = (byte) direction(gx, gy);
             }
         }
-        return output;
     }
     
     /**
-     * compute the magnitude of the x and y derivative passes of the image
-     * @param imgObj the source image object
-     * @param xSobel x pass derivatives
-     * @param ySobel y pass dirivatives
-     * @return an array containing the magnitudes of the derivatives
+     * put the direction of a derivative into one of 4 direction classes
+     * @param gx the x directional derivative
+     * @param gy the y directional derivative
+     * @return the direction class
      */
-    public int[][] combineSobel(ImageObject imgObj, int[][] xSobel, int[][] ySobel){
-        int[][] sobel = new int[imgObj.getIntWidth()][imgObj.getIntHeight()];
-        for(int y = 0; y < imgObj.getIntHeight( ); y++){
-            for(int x = 0; x < imgObj.getIntWidth( ); x++){
-                sobel[x][y] = (int) Math.hypot(xSobel[x][y], ySobel[x][y]);
-            }
-        }
-        return sobel;
+    static int direction(int gx, int gy){
+        long ax = Math.abs(gx), ay = Math.abs(gy);
+        if(ax << TAN_SHIFT <= ay*TAN_22_5){return DIR_0;}   // mostly vertical (or no derivative at all)
+        if(ay << TAN_SHIFT < ax*TAN_22_5){return DIR_90;}   // mostly horizontal
+        return (gx > 0) == (gy > 0) ? DIR_135 : DIR_45;
     }
     
     /**
-     * preform the gaussean filter by computing the convolution of the kernal and image pixels
-     * @param buffer the int[] array of image pixels. the pixels in this array are unsigned ints
-     * @param imgObj the source image object
-     * @param pixWriter the image writer object to be used to render the image
+     * preform the gaussean filter by computing the convolution of the kernal and image pixels. the Gaussian is
+     * separable so the image is convolved with the 1D kernel along the rows first and then along the columns,
+     * pixels outside of the image count as 0
+     * @param buffer the grey pixel values of the image
      * @return an array containing the filtered pixels
      */
-    public int[][] filter(int[][] buffer, ImageObject imgObj, PixelWriter pixWriter){
-        int width = imgObj.getIntWidth();
-        int height = imgObj.getIntHeight();
-        int[][] output = new int[width][height];
-        double[][] kernel = constructKernel();
+    public BytePlane filter(BytePlane buffer){
+        int width = buffer.width;
+        int height = buffer.height;
+        byte[] in = buffer.data;
+        GaussianKernel kernel = GaussianKernel.get(config.kernelSize, config.sigma);
+        int[] weights = kernel.weights;
+        int radius = kernel.radius;
         
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                 for(int i = -KERNEL_SIZE/2, dx = 0; i <= KERNEL_SIZE/2; i++, dx++){
-                    for(int j = -KERNEL_SIZE/2, dy = 0; j <= KERNEL_SIZE/2; j++, dy++){
-                        int xx = x + i; int yy = y + j;
-                        if(imgObj.inBounds(xx, yy)){
-                            // convert the pixel value from an unsigned integer to it's corresponding
-                            // rgb value
-                            int grey = buffer[xx][yy] & 0xFF;
-                            output[x][y] += grey * kernel[dx][dy];
-                        }
+        BytePlane output = new BytePlane(width, height);
+        byte[] out = output.data;
+        runBands(bands(height), (from, to) -> {
+            // the rows within radius of the band are its halo, their horizontal pass is repeated by every band
+            // that needs them
+            int top = Math.max(0, from - radius), bottom = Math.min(height, to + radius);
+            
+            // horizontal pass, the sums keep GaussianKernel.SHIFT fractional bits
+            int[] rows = new int[(bottom - top)*width];
+            for(int y = top, rowStart = top*width, row = 0; y < bottom; y++, rowStart += width, row += width){
+                job.check();
+                for(int x = 0; x < width; x++){
+                    int left = Math.max(-radius, -x), right = Math.min(radius, width - 1 - x);
+                    int sum = 0;
+                    for(int i = left; i <= right; i++){
+                        sum += (in[rowStart + x + i] & 0xFF) * weights[i + radius];
                     }
+                    rows[row + x] = sum;
                 }
-                if(pixWriter!=null){pixWriter.setColor(x, y, Color.grayRgb(output[x][y]));}
             }
-        }
+            
+            // vertical pass, a whole row of the output is accumulated at a time so the reads stay sequential. the
+            // weights are not normalised, so for a small sigma the sums only fit into longs
+            long[] sums = new long[width];
+            int shift = 2*GaussianKernel.SHIFT, half = 1 << (shift - 1);
+            for(int y = from; y < to; y++){
+                job.check();
+                Arrays.fill(sums, 0);
+                int above = Math.max(-radius, -y), below = Math.min(radius, height - 1 - y);
+                for(int j = above; j <= below; j++){
+                    long weight = weights[j + radius];
+                    for(int x = 0, index = (y + j - top)*width; x < width; x++, index++){
+                        sums[x] += rows[index] * weight;
+                    }
+                }
+                for(int x = 0, index = y*width; x < width; x++, index++){
+                    long grey = (sums[x] + half) >> shift;
+                    out[index] = (byte) (grey > 255 ? 255 : grey);
+                }
+            }
+        });
         return output;
     }
     
     /**
-     * calculate the directional angle for each pixel
-     * @param imgObj
-     * @param xSobel
-     * @param ySobel
-     * @return 
+     * thin the detected edges by using nonmaximal suppression on the pixels. a pixel is kept when it is larger
+     * than both of the neighbours that lie along its derivative. the neighbours are found with a table of index
+     * offsets (one per direction class), so nothing is allocated per pixel. a pixel on the border of the image
+     * is only kept when both of its neighbours are inside the image
+     * @param gradient the magnitudes and directions of the derivatives
+     * @return the array of surpressed pixels
      */
-    public double[][] classifyAnglesHelper(ImageObject imgObj, int[][] xSobel, int[][] ySobel){
-        int width = imgObj.getIntWidth();
-        int height = imgObj.getIntHeight();
-        double[][] output = new double[width][height];
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){ 
-                if(xSobel[x][y] == 0){
-                    if(ySobel[x][y] == 0){
-                        output[x][y] = 0;
-                    }else{
-                        output[x][y] = ANGLE_90;
+    public BytePlane nonMaximSupression(Gradient gradient){
+        int width = gradient.magnitude.width;
+        int height = gradient.magnitude.height;
+        short[] mag = gradient.magnitude.data;
+        byte[] dir = gradient.direction.data;
+        int low = config.lowThreshold, high = config.highThreshold;
+        // the neighbours of the pixel at index are at index + offset and index - offset
+        int[] offsets = neighbourOffsets(width);
+        
+        BytePlane output = new BytePlane(width, height);
+        byte[] buffer = output.data;
+        runBands(bands(height), (from, to) -> {
+            for(int y = from, index = from*width; y < to; y++){
+                job.check();
+                boolean borderRow = y == 0 || y == height - 1;
+                for(int x = 0; x < width; x++, index++){
+                    int m = mag[index];
+                    if(m < low){continue;} // handle points below threshold
+                    int d = dir[index];
+                    if(borderRow || x == 0 || x == width - 1){
+                        // only the neighbours along the border are inside the image
+                        boolean inside = borderRow ? d == DIR_90 && x > 0 && x < width - 1 : d == DIR_0;
+                        if(!inside){continue;}
+                    }
+                    int offset = offsets[d];
+                    if(m > mag[index + offset] && m > mag[index - offset]){
+                        buffer[index] = (byte) (m > high ? 255 : 128);
                     }
-                }else{
-                    output[x][y] = Math.atan2(ySobel[x][y], xSobel[x][y]);
                 }
             }
-        }
+        });
         return output;
     }
     
     /**
-     * using the magnitude of the sobel operator, calculate the angle in which the derivative is pointing.
-     * this tells us which direction an edge is pointing towards, this direction is then clamped into 4 angle
-     * classes
-     * @param imgObj the source image object
-     * @param xSobel the sobel operator applied in the x direction
-     * @param ySobel the sobel operator applied in the y direction
-     * @return array containing categorized angles
+     * @param width the width of the image
+     * @return the index offset to one of the two neighbours of each direction class, the other neighbour is at
+     * the negated offset
      */
-    public double[][] classifyAngles(ImageObject imgObj, int[][] xSobel, int[][] ySobel){
-        int width = imgObj.getIntWidth();
-        int height = imgObj.getIntHeight();
-        double[][] angles = new double[width][height];
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                double currAngle;
-                // calculate the angle using the gradients
-                if(xSobel[x][y] == 0){ // cater for the fact that arctan near pi/2 -> infinity
-                    if(ySobel[x][y] == 0){
-                        currAngle = 0;
-                    }else{
-                        currAngle = ANGLE_90;
-                    }
-                }else{
-                    currAngle = Math.atan2(ySobel[x][y], xSobel[x][y]);
-                }
-                
-                // put the angle into one of 4 angle classes
-                if(currAngle < 0) 
-                    {currAngle += ANGLE_180;}
-                if(currAngle < Math.toRadians(22.5) || Math.toRadians(157.5) < currAngle)  
-                    {angles[x][y] = 0;}
-                else if(currAngle < Math.toRadians(67.5))
-                    {angles[x][y] = ANGLE_45;}
-                else if(currAngle < Math.toRadians(112.5))
-                    {angles[x][y] = ANGLE_90;}
-                else{angles[x][y] = ANGLE_135;}
-            }
-        }
-        return angles;
+    static int[] neighbourOffsets(int width){
+        int[] offsets = new int[4];
+        offsets[DIR_0] = width;
+        offsets[DIR_45] = width - 1;
+        offsets[DIR_90] = 1;
+        offsets[DIR_135] = width + 1;
+        return offsets;
     }
     
     /**
-     * depending on the angle, the two adjacent points that are in the direction of the angle are returned
-     * a helper method for nonmaximal surpression
-     * @param pixelPos the position of the centre pixel
-     * @param angle the angle obtained with the sobel operator
-     * @return an array containing the two adjacent points
+     * make the edges obtained through nonmaximal surpression a lot thinner as well as have less holes/break in the edge lines.
+     * every strong (255) pixel is an edge, and so is every weak (128) pixel that is connected to a strong pixel through a
+     * chain of weak pixels. the chains are followed with a stack of pixel indices seeded with the strong pixels, each pixel
+     * is pushed at most once so this runs in time linear in the size of the image.
+     * each band only follows the chains within its own rows. a chain that crosses into another band then has an edge pixel
+     * on one side of the seam between the bands and an unmarked weak pixel on the other, so the chains are finished off by
+     * following them (across the whole image) from the edge pixels on both sides of every seam
+     * @param nonmax the output of nonmaximal suppression
+     * @param direction the direction classes of the derivatives, stored with each edge pixel. null if not needed
+     * @return the new edge pixels, both as an edge image and as a list (in row order)
      */
-    public Point[] direction(Point pixelPos, double angle){
-        Point[] directions = new Point[2];
-        if(angle == 0){
-            directions[0] = new Point(pixelPos.x,pixelPos.y+1);
-            directions[1] = new Point(pixelPos.x,pixelPos.y-1);
-            return directions;
-        }
-        if(angle == ANGLE_45){
-            directions[0] = new Point(pixelPos.x-1,pixelPos.y+1);
-            directions[1] = new Point(pixelPos.x+1,pixelPos.y-1);
-            return directions;
-        }
-        if(angle == ANGLE_90){
-            directions[0] = new Point(pixelPos.x+1,pixelPos.y);
-            directions[1] = new Point(pixelPos.x-1,pixelPos.y);
-            return directions;
-        }
-        if(angle == ANGLE_135){
-            directions[0] = new Point(pixelPos.x+1,pixelPos.y+1);
-            directions[1] = new Point(pixelPos.x-1,pixelPos.y-1);
-            return directions;
+    public EdgeList hysteresis(BytePlane nonmax, BytePlane direction){
+        int width = nonmax.width;
+        int height = nonmax.height;
+        byte[] in = nonmax.data;
+        BytePlane output = new BytePlane(width, height);
+        byte[] hyster = output.data;
+        
+        int[] bounds = bands(height);
+        runBands(bounds, (from, to) -> {
+            int[] stack = new int[64];
+            for(int y = from; y < to; y++){
+                job.check();
+                for(int index = y*width, end = index + width; index < end; index++){
+                    if(in[index] != (byte) 255){continue;}
+                    hyster[index] = (byte) 255;
+                    stack[0] = index;
+                    stack = follow(in, hyster, width, from, to, stack, 1);
+                }
+            }
+        });
+        if(bounds.length > 2){
+            job.check();
+            int[] stack = new int[64];
+            int top = 0;
+            for(int b = 1; b < bounds.length - 1; b++){
+                for(int index = (bounds[b] - 1)*width, end = (bounds[b] + 1)*width; index < end; index++){
+                    if(hyster[index] == 0){continue;}
+                    if(top == stack.length){stack = Arrays.copyOf(stack, 2*top);}
+                    stack[top++] = index;
+                }
+            }
+            follow(in, hyster, width, 0, height, stack, top);
         }
-        MainPanelController.handleError(0, "CannyEdge.direction(..): angle unclassifiable");
-        return null; // should not happen
+        return EdgeList.fromPlane(output, direction);
     }
     
     /**
-     * thin the detected edges by using nonmaximal suppression on the pixels, 
-     * @param imgObj the source image object
-     * @param xSobel the sobel operator applied in the x direction
-     * @param ySobel the sobel operator applied in the y direction
-     * @param sobel the magnitude of the x and y sobel operators
-     * @param pixWriter
-     * @return the array of surpressed pixels
+     * follow the weak pixels connected to the pixels on a stack, marking them as edges
+     * @param in the output of nonmaximal suppression
+     * @param hyster the edge pixels found so far
+     * @param from the first row the chains may go into
+     * @param to the row after the last row the chains may go into
+     * @param stack the indices of the pixels to follow from
+     * @param top the number of pixels on the stack
+     * @return the stack, which may have been grown
      */
-    public int[][] nonMaximSupression(ImageObject imgObj, int[][] xSobel, int[][] ySobel, int[][] sobel, PixelWriter pixWriter){
-        int width = imgObj.getIntWidth();
-        int height = imgObj.getIntHeight();
-        double[][] angles = classifyAngles(imgObj, xSobel, ySobel);
-        boolean p1 = false, p2 = false; 
-        
-        int[][] buffer = new int[width][height];
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                if(sobel[x][y] < THRESHOLD_LOW){ // handle points below threshold
-                    buffer[x][y] = 0;
-                }else{
-                    // handle intermidiate points
-                    Point[] neighbours = direction(new Point(x,y), angles[x][y]);
-                    if(imgObj.inBounds(neighbours[0].x, neighbours[0].y)){
-                        if(sobel[x][y] > sobel[neighbours[0].x][neighbours[0].y]){
-                            p1 = true;
-                        }
-                    }
-                    if(imgObj.inBounds(neighbours[1].x, neighbours[1].y)){
-                        if(sobel[x][y] > sobel[neighbours[1].x][neighbours[1].y]){
-                            p2 = true;
-                        }
+    private static int[] follow(byte[] in, byte[] hyster, int width, int from, int to, int[] stack, int top){
+        while(top > 0){
+            int p = stack[--top];
+            int x = p % width, y = p / width;
+            int fromX = x > 0 ? -1 : 0, toX = x < width - 1 ? 1 : 0;
+            int fromY = y > from ? -1 : 0, toY = y < to - 1 ? 1 : 0;
+            for(int j = fromY; j <= toY; j++){
+                for(int i = fromX, q = p + j*width + fromX; i <= toX; i++, q++){
+                    if(in[q] == (byte) 128 && hyster[q] == 0){
+                        hyster[q] = (byte) 255;
+                        if(top == stack.length){stack = Arrays.copyOf(stack, 2*top);}
+                        stack[top++] = q;
                     }
-                    
-                    if(sobel[x][y] > THRESHOLD_HIGH && p1 && p2){ // handle points below threshold
-                        buffer[x][y] = 255; 
-                    }
-                    else if(p1 && p2)
-                            {buffer[x][y] = 128;}
-                    else{buffer[x][y] = 0;}
-                    p1 = false; p2 = false;
                 }
-                if(pixWriter != null){pixWriter.setColor(x, y, Color.grayRgb(buffer[x][y]));}
             }
-            
         }
-        return buffer;
+        return stack;
     }
     
     /**
-     * make the edges obtained through nonmaximal surpression a lot thinner as well as have less holes/break in the edge lines
-     * @param imgObj
-     * @param nonmax
-     * @param pixWriter
-     * @return the new edge pixels
+     * checks whether a given point is within the bounds of an image
+     * @param x x position
+     * @param y y position
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return true if the point is within the bounds
      */
-    public int[][] hysteresis(ImageObject imgObj, int nonmax[][], PixelWriter pixWriter){
-        int width = imgObj.getIntWidth();
-        int height = imgObj.getIntHeight();
-        boolean isEdge = false;
-        int[][] hyster = new int[width][height];
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                // compare the current pixel to its neighbours
-                if(nonmax[x][y] == 128){
-                    for(int i = -1; i <= 1; i++){
-                       for(int j = -1; j <= 1; j++){
-                           int xx = x + i; int yy = y + j;
-                           if(imgObj.inBounds(xx, yy)){
-                               if(nonmax[xx][yy] == 255){
-                                   isEdge = true;
-                               }
-                           }
-                       }
-                   }
-                   if(isEdge){hyster[x][y] = 255;}
-                   else{hyster[x][y] = 0;}
-                   isEdge = false;
-                }else{hyster[x][y] = nonmax[x][y];}
-                if(pixWriter!=null){pixWriter.setColor(x, y, Color.grayRgb(hyster[x][y]));}
-            }
-        }
-    return hyster;
+    public static boolean inBounds(int x, int y, int width, int height){
+        return x >= 0 && y >= 0 && x < width && y < height;
     }
     
     /**
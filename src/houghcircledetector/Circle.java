@@ -0,0 +1,28 @@
+package houghcircledetector;
+
+/**
+ * a circle found by one of the Hough transforms
+ * @author Ntokozo Zwane
+ */
+public final class Circle {
+    // the centre and the radius of the circle
+    public final int x, y, r;
+    // the number of votes the circle got
+    public final int votes;
+    // the fraction of the points of the circle that voted for it (or, for GradientHough, that are covered by edge
+    // pixels), 0 - 1. used for ranking circles of different radii
+    public final double score;
+
+    public Circle(int x, int y, int r, int votes, double score){
+        this.x = x;
+        this.y = y;
+        this.r = r;
+        this.votes = votes;
+        this.score = score;
+    }
+
+    @Override
+    public String toString(){
+        return x + " " + y + " " + r + " " + String.format("%.3f", score);
+    }
+}
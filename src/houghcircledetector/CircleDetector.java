@@ -0,0 +1,285 @@
+package houghcircledetector;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * the detection engine. runs the full grayscale -> smooth -> sobel -> nonmaximal suppression -> hysteresis -> Hough
+ * pipeline on plain argb pixel buffers and returns the results as image planes. nothing in here (or in the CannyEdge and
+ * HoughTrans stages it drives) touches JavaFX, so the engine can be used both by the GUI and by the headless
+ * BatchDetector.
+ * every call is given the DetectionConfig it runs with, and the stages are set up for that call only, so the same
+ * detector can run any number of images with different configurations at the same time. the package-private
+ * methods that take a Job run for that job, so they can be cancelled (see Pipeline)
+ * @author Ntokozo Zwane
+ */
+public class CircleDetector {
+    // the pool shared by the Canny bands and the Hough tasks
+    private ForkJoinPool pool;
+
+    public CircleDetector(){
+        setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * the maximum possible radius of a circle in an image, minimum(image_width, image_height)/2
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the maximum radius
+     */
+    public static int maxRadius(int width, int height){
+        return Math.min(width, height)/2;
+    }
+
+    /**
+     * @return the number of threads the Canny stages and the Hough transform are run on
+     */
+    public int getParallelism(){
+        return pool.getParallelism();
+    }
+
+    /**
+     * set the number of threads the Canny stages and the Hough transform are run on, the results do not depend on it
+     * @param parallelism the number of threads, 1 runs everything on the calling thread
+     */
+    public void setParallelism(int parallelism){
+        if(parallelism < 1){throw new IllegalArgumentException("invalid parallelism " + parallelism);}
+        if(pool != null){
+            if(parallelism == pool.getParallelism()){return;}
+            pool.shutdown();
+        }
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    ForkJoinPool pool(){
+        return pool;
+    }
+
+    CannyEdge cannyE(DetectionConfig config){
+        return cannyE(config, Job.NONE);
+    }
+
+    CannyEdge cannyE(DetectionConfig config, Job job){
+        return new CannyEdge(config, pool, job);
+    }
+
+    private ParallelHough parallelH(DetectionConfig config, Job job){
+        return new ParallelHough(pool, config.tuner, config.radiusStep, job);
+    }
+
+    /**
+     * normalize the image so that the rgb values are all the same
+     * @param argb the pixels of the image in argb form, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param config the luma weights of the channels
+     * @return the grey value of each pixel
+     */
+    public BytePlane grayscale(int[] argb, int width, int height, DetectionConfig config){
+        return cannyE(config).grayscale(argb, width, height);
+    }
+
+    /**
+     * smooth the image by applying a Gaussian filter to it
+     * @param argb the pixels of the image in argb form, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param config the kernel size and sigma of the filter
+     * @return the array containing the smoothed pixels
+     */
+    public BytePlane smooth(int[] argb, int width, int height, DetectionConfig config){
+        return cannyE(config).filter(grayscale(argb, width, height, config));
+    }
+
+    /**
+     * the magnitude of the x and y derivatives of the smoothed image
+     * @param argb the pixels of the image in argb form, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param config the parameters of the smoothing
+     * @return the array containing the magnitudes
+     */
+    public ShortPlane sobel(int[] argb, int width, int height, DetectionConfig config){
+        return cannyE(config).gradient(smooth(argb, width, height, config)).magnitude;
+    }
+
+    /**
+     * use Canny Edge Detection algorithm to detect edges in an image
+     * @param argb the pixels of the image in argb form, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param config the parameters of the smoothing and the thresholds
+     * @return the edge detected pixels
+     */
+    public EdgeList cannyEdge(int[] argb, int width, int height, DetectionConfig config){
+        CannyEdge cannyE = cannyE(config);
+        Gradient gradient = cannyE.gradient(smooth(argb, width, height, config));
+        BytePlane nonmax = cannyE.nonMaximSupression(gradient);
+        return cannyE.hysteresis(nonmax, gradient.direction);
+    }
+
+    /**
+     * the Hough accumulator for a single radius, the edge pixels are split over getParallelism() threads
+     * @param canny the edge pixels
+     * @param radius the radius of the search space
+     * @return the accumulated pixel values
+     */
+    public IntPlane accumulator(EdgeList canny, int radius){
+        return accumulator(canny, radius, DetectionConfig.DEFAULT, Job.NONE);
+    }
+
+    /**
+     * @param config the parameters of the transform
+     * @param job the job the transform runs for
+     * @see #accumulator(EdgeList, int)
+     */
+    IntPlane accumulator(EdgeList canny, int radius, DetectionConfig config, Job job){
+        return parallelH(config, job).accumulator(canny, radius);
+    }
+
+    /**
+     * the Hough accumulator over the radii of a configuration, each pixel holds the highest count found for any of
+     * the radii. the radii are split over getParallelism() threads
+     * @param canny the edge pixels
+     * @param config the radii and the radius step
+     * @return the accumulated pixel values
+     */
+    public IntPlane accumulator(EdgeList canny, DetectionConfig config){
+        return accumulator(canny, config, Job.NONE);
+    }
+
+    IntPlane accumulator(EdgeList canny, DetectionConfig config, Job job){
+        IntPlane accumulator = new IntPlane(canny.width, canny.height);
+        parallelH(config, job).accumulator(canny, accumulator, config.minRadius, config.lastRadius(canny.width, canny.height));
+        return accumulator;
+    }
+
+    /**
+     * preform the Hough circle detection over the radii of a configuration. the detected circles are drawn into the
+     * returned array, the higher the value the more votes the circle had. the radii are split over getParallelism()
+     * threads
+     * @param canny the edge pixels
+     * @param config the radii, the radius step and the peak threshold
+     * @return the array containing the drawn circles
+     */
+    public IntPlane hough(EdgeList canny, DetectionConfig config){
+        IntPlane toDraw = new IntPlane(canny.width, canny.height);
+        parallelH(config, Job.NONE).hough(canny, toDraw, config.minRadius, config.lastRadius(canny.width, canny.height));
+        return toDraw;
+    }
+
+    /**
+     * find the circles over the radii of a configuration as a list, only the peaks of the Hough space are kept (see
+     * PeakFinder). the radii are split over getParallelism() threads
+     * @param canny the edge pixels
+     * @param config the radii, the radius step, the peak threshold and the most circles to return
+     * @return the circles, highest score first
+     */
+    public List<Circle> circles(EdgeList canny, DetectionConfig config){
+        return circles(canny, config, Job.NONE);
+    }
+
+    List<Circle> circles(EdgeList canny, DetectionConfig config, Job job){
+        return parallelH(config, job).circles(canny, config.minRadius, config.lastRadius(canny.width, canny.height), config.maxCircles);
+    }
+
+    /**
+     * run the whole pipeline on an image using the gradient directed Hough transform (see GradientHough). every
+     * radius of the range is measured, the radius step does not apply
+     * @param argb the pixels of the image in argb form, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param config the parameters of the job
+     * @return the circles, highest score first
+     */
+    public List<Circle> detectDirected(int[] argb, int width, int height, DetectionConfig config){
+        CannyEdge cannyE = cannyE(config);
+        BytePlane smoothed = smooth(argb, width, height, config);
+        Gradient gradient = cannyE.gradient(smoothed);
+        EdgeList canny = cannyE.hysteresis(cannyE.nonMaximSupression(gradient), gradient.direction);
+        return directed(canny, smoothed, config, Job.NONE);
+    }
+
+    /**
+     * the gradient directed Hough transform of edge pixels
+     * @param canny the edge pixels, with their directions
+     * @param smoothed the smoothed image the edges were found in
+     * @param config the parameters of the job
+     * @param job the job the transform runs for
+     * @return the circles, highest score first
+     */
+    List<Circle> directed(EdgeList canny, BytePlane smoothed, DetectionConfig config, Job job){
+        return new GradientHough(pool).circles(canny, smoothed, config.minRadius, config.lastRadius(canny.width, canny.height), config.maxCircles, job);
+    }
+
+    /**
+     * run the whole pipeline on an image using the coarse to fine pyramid search (see PyramidHough)
+     * @param argb the pixels of the image in argb form, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param config the parameters of the job
+     * @return the circles, highest score first
+     */
+    public List<Circle> detectPyramid(int[] argb, int width, int height, DetectionConfig config){
+        PyramidHough pyramidH = new PyramidHough(cannyE(config), pool, config.tuner, config.radiusStep);
+        return pyramidH.circles(grayscale(argb, width, height, config), config.minRadius, config.lastRadius(width, height), config.maxCircles);
+    }
+
+    /**
+     * run the whole pipeline on an image using the randomized Hough transform (see RandomizedHough). the radius of
+     * a sampled circle is computed rather than searched, so the radius step does not apply
+     * @param argb the pixels of the image in argb form, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param config the parameters of the job
+     * @return the circles, highest score first
+     */
+    public List<Circle> detectRandomized(int[] argb, int width, int height, DetectionConfig config){
+        RandomizedHough randomH = new RandomizedHough(config.tuner);
+        return randomH.circles(cannyEdge(argb, width, height, config), config.minRadius, config.lastRadius(width, height), config.maxCircles);
+    }
+
+    /**
+     * draw circles into an array, each pixel holds the number of circles that go through it
+     * @param circles the circles
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the array containing the drawn circles
+     */
+    public static IntPlane draw(List<Circle> circles, int width, int height){
+        IntPlane toDraw = new IntPlane(width, height);
+        for(Circle c : circles){CircleStencil.get(c.r, width).draw(c.x, c.y, height, toDraw.data, 0);}
+        return toDraw;
+    }
+
+    /**
+     * the Hough line accumulator
+     * @param canny the edge pixels
+     * @return the accumulated pixel values
+     */
+    public IntPlane houghLine(EdgeList canny){
+        return houghLine(canny, Job.NONE);
+    }
+
+    /**
+     * the Hough line accumulator, as a job that can be cancelled
+     * @see #houghLine(EdgeList)
+     */
+    public IntPlane houghLine(EdgeList canny, Job job){
+        IntPlane toDraw = new IntPlane(canny.width, canny.height);
+        new HoughTrans(HoughTrans.TUNER, 1, job).houghLine(canny, toDraw);
+        return toDraw;
+    }
+
+    /**
+     * run the whole pipeline on an image
+     * @param argb the pixels of the image in argb form, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param config the parameters of the job
+     * @return the circles, highest score first
+     */
+    public List<Circle> detect(int[] argb, int width, int height, DetectionConfig config){
+        return circles(cannyEdge(argb, width, height, config), config);
+    }
+}
@@ -0,0 +1,243 @@
+package houghcircledetector;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the points of a circle of a given radius, as offsets from its centre. the points are the ones Bresenham's circle
+ * drawing algorithm (http://rosettacode.org/wiki/Bitmap/Midpoint_circle_algorithm) gives, with the points the octant
+ * reflections share (on the axes and the diagonals) only stored once, in row order.
+ * the offsets are also stored as indices relative to the centre in a row-by-row array of a given width, so a circle
+ * around a pixel that is far enough from the border can be drawn without any bounds checks.
+ * the points of a radius are cached since the same ones are used for every edge pixel. only the offsets of the last
+ * width asked for are kept with them, so the cache holds one set of stencils however many image sizes are run
+ * @author Ntokozo Zwane
+ */
+public final class CircleStencil {
+    private static final ConcurrentHashMap<Integer, Points> CACHE = new ConcurrentHashMap<>();
+
+    public final int radius;
+    public final int width;
+    // the x and y offsets of the points from the centre
+    final int[] dx, dy;
+    // the offsets of the points from the centre in an array of the given width, dy*width + dx
+    final int[] offsets;
+    // beyond[d] is the number of points with dx < -d, for d < radius. the circle is symmetric, so it is also the
+    // number of points with dx > d, dy < -d or dy > d
+    private final int[] beyond;
+
+    /**
+     * the points of a radius, which do not depend on the width
+     */
+    private static final class Points {
+        final int[] dx, dy, beyond;
+        // the stencil of the last width asked for
+        volatile CircleStencil last;
+
+        Points(int radius){
+            // each point is keyed by its position in the (2*radius + 1)^2 box around the centre, sorting the keys
+            // puts the points in row order and makes the duplicates adjacent
+            int side = 2*radius + 1;
+            int[] keys = new int[8*(radius + 1)];
+            int n = 0;
+            int d = (5 - radius*4)/4;
+            int x = 0;
+            int y = radius;
+            do{
+                keys[n++] = key(x, y, radius, side);
+                keys[n++] = key(x, -y, radius, side);
+                keys[n++] = key(-x, y, radius, side);
+                keys[n++] = key(-x, -y, radius, side);
+                keys[n++] = key(y, x, radius, side);
+                keys[n++] = key(y, -x, radius, side);
+                keys[n++] = key(-y, x, radius, side);
+                keys[n++] = key(-y, -x, radius, side);
+
+                if(d < 0){d += 2 * x + 1;}
+                else{d += 2 * (x - y) + 1; y--;}
+                x++;
+            }while(x <= y);
+            Arrays.sort(keys, 0, n);
+            int unique = 0;
+            for(int i = 0; i < n; i++){
+                if(i == 0 || keys[i] != keys[i - 1]){keys[unique++] = keys[i];}
+            }
+            dx = new int[unique];
+            dy = new int[unique];
+            for(int i = 0; i < unique; i++){
+                dx[i] = keys[i] % side - radius;
+                dy[i] = keys[i] / side - radius;
+            }
+            // count the points by -dx first, then sum up from the left
+            beyond = new int[radius];
+            for(int i = 0; i < unique; i++){
+                if(dx[i] < 0){beyond[-dx[i] - 1]++;}
+            }
+            for(int i = radius - 2; i >= 0; i--){beyond[i] += beyond[i + 1];}
+        }
+    }
+
+    private CircleStencil(int radius, int width, Points points){
+        this.radius = radius;
+        this.width = width;
+        this.dx = points.dx;
+        this.dy = points.dy;
+        this.beyond = points.beyond;
+        offsets = new int[dx.length];
+        for(int i = 0; i < dx.length; i++){offsets[i] = dy[i]*width + dx[i];}
+    }
+
+    private static int key(int x, int y, int radius, int side){
+        return (y + radius)*side + x + radius;
+    }
+
+    /**
+     * @param radius the radius of the circle
+     * @param width the width of the arrays the circle is drawn into
+     * @return the stencil, the same one as the last time unless another width was asked for in between
+     */
+    public static CircleStencil get(int radius, int width){
+        if(radius < 0){throw new IllegalArgumentException("invalid radius " + radius);}
+        Points points = CACHE.computeIfAbsent(radius, Points::new);
+        CircleStencil stencil = points.last;
+        if(stencil == null || stencil.width != width){points.last = stencil = new CircleStencil(radius, width, points);}
+        return stencil;
+    }
+
+    /**
+     * @return the number of points on the circle
+     */
+    public int size(){
+        return offsets.length;
+    }
+
+    /**
+     * @param d a distance from the centre
+     * @return the number of points further than d to the left of the centre (the same as to the right, above or
+     * below it)
+     */
+    int beyond(int d){
+        return d >= radius ? 0 : beyond[d];
+    }
+
+    /**
+     * count the points of the circle around a centre that lie inside an image, the number of votes draw(..) places
+     * @param centerX the x coordinate of the centre
+     * @param centerY the y coordinate of the centre
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the number of points inside the image
+     */
+    public int inside(int centerX, int centerY, int width, int height){
+        int n = offsets.length;
+        if(centerX >= radius && centerY >= radius && centerX + radius < width && centerY + radius < height){return n;}
+        int counter = 0;
+        for(int i = 0; i < n; i++){
+            if(CannyEdge.inBounds(centerX + dx[i], centerY + dy[i], width, height)){counter++;}
+        }
+        return counter;
+    }
+
+    /**
+     * count the edge pixels on the circle around a centre
+     * @param edges the edge image (255 for edge pixels), its width must be the width of the stencil
+     * @param centerX the x coordinate of the centre
+     * @param centerY the y coordinate of the centre
+     * @return the number of points of the circle that are edge pixels
+     */
+    public int count(BytePlane edges, int centerX, int centerY){
+        byte[] data = edges.data;
+        int height = edges.height, centre = centerY*width + centerX, count = 0;
+        boolean inside = centerX >= radius && centerY >= radius && centerX + radius < width && centerY + radius < height;
+        for(int i = 0, n = offsets.length; i < n; i++){
+            if(!inside && !CannyEdge.inBounds(centerX + dx[i], centerY + dy[i], width, height)){continue;}
+            if(data[centre + offsets[i]] == (byte) 255){count++;}
+        }
+        return count;
+    }
+
+    /**
+     * add one to every point of the circle around a centre that lies inside the image
+     * @param centerX the x coordinate of the centre
+     * @param centerY the y coordinate of the centre
+     * @param height the height of the image
+     * @param toDraw the array the circle is drawn into, row by row
+     * @param offset the index of the first cell of the image in toDraw
+     * @return the number of points that were inside the image
+     */
+    public int draw(int centerX, int centerY, int height, int[] toDraw, int offset){
+        return add(centerX, centerY, height, toDraw, offset, 1);
+    }
+
+    /**
+     * take one off every point of the circle around a centre that lies inside the image, undoing draw(..)
+     * @see #draw(int, int, int, int[], int)
+     */
+    public int erase(int centerX, int centerY, int height, int[] toDraw, int offset){
+        return add(centerX, centerY, height, toDraw, offset, -1);
+    }
+
+    /**
+     * the same as draw(..), into an array of chars (see Slice)
+     * @see #draw(int, int, int, int[], int)
+     */
+    int draw(int centerX, int centerY, int height, char[] toDraw){
+        return add(centerX, centerY, height, toDraw, 1);
+    }
+
+    /**
+     * the same as erase(..), from an array of chars (see Slice)
+     * @see #erase(int, int, int, int[], int)
+     */
+    int erase(int centerX, int centerY, int height, char[] toDraw){
+        return add(centerX, centerY, height, toDraw, -1);
+    }
+
+    /**
+     * add votes to every point of the circle around a centre that lies inside the image, where the cells are kept in a
+     * hash table keyed by their index in a row-by-row array (see Slice)
+     * @param votes the votes to add to each point, -1 to take them back
+     * @return the number of points that were inside the image
+     */
+    int draw(int centerX, int centerY, int height, SparseAccumulator toDraw, int votes){
+        int centre = centerY*width + centerX;
+        int n = offsets.length;
+        boolean inside = centerX >= radius && centerY >= radius && centerX + radius < width && centerY + radius < height;
+        int counter = 0;
+        for(int i = 0; i < n; i++){
+            if(!inside && !CannyEdge.inBounds(centerX + dx[i], centerY + dy[i], width, height)){continue;}
+            toDraw.add(centre + offsets[i], votes);
+            counter++;
+        }
+        return counter;
+    }
+
+    private int add(int centerX, int centerY, int height, char[] toDraw, int votes){
+        int centre = centerY*width + centerX;
+        int n = offsets.length;
+        if(centerX >= radius && centerY >= radius && centerX + radius < width && centerY + radius < height){
+            for(int i = 0; i < n; i++){toDraw[centre + offsets[i]] += votes;}
+            return n;
+        }
+        int counter = 0;
+        for(int i = 0; i < n; i++){
+            if(CannyEdge.inBounds(centerX + dx[i], centerY + dy[i], width, height)){toDraw[centre + offsets[i]] += votes; counter++;}
+        }
+        return counter;
+    }
+
+    private int add(int centerX, int centerY, int height, int[] toDraw, int offset, int votes){
+        int centre = offset + centerY*width + centerX;
+        int n = offsets.length;
+        if(centerX >= radius && centerY >= radius && centerX + radius < width && centerY + radius < height){
+            // the whole circle is inside the image
+            for(int i = 0; i < n; i++){toDraw[centre + offsets[i]] += votes;}
+            return n;
+        }
+        int counter = 0;
+        for(int i = 0; i < n; i++){
+            if(CannyEdge.inBounds(centerX + dx[i], centerY + dy[i], width, height)){toDraw[centre + offsets[i]] += votes; counter++;}
+        }
+        return counter;
+    }
+}
@@ -0,0 +1,158 @@
+package houghcircledetector;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * follows the circles of one frame of a sequence into the next frame. rather than the whole (a, b, r) Hough space, only
+ * the cells around each circle of the previous frame are searched: the centres within window of its centre and the
+ * radii within band of its radius (the ones the full transform sweeps, every step from the smallest). the votes of a
+ * cell are counted straight from the edge image (the edge pixels on the circle of the cell, which is the number of
+ * votes the full transform gives the cell), and a cell is a circle the same way as in the full transform: it is above
+ * the threshold of its radius and no cell in the 3x3x3 neighbourhood around it (the radii one step smaller and larger)
+ * has a higher score (see PeakFinder). the threshold of a radius is counted from all the edge pixels of the frame, so
+ * the peaks found are exactly the peaks of the full transform (over every radius) that lie in the windows, and they are
+ * ranked the same way. a circle that moved further than window (or whose radius changed by more than band) is lost, and
+ * new circles are not found at all, so the full transform has to be run every now and then (see SequenceDetector)
+ * @author Ntokozo Zwane
+ */
+public class CircleTracker {
+    // the default distance the centre and the radius of a circle are followed over from one frame to the next
+    static final int WINDOW = 8;
+    static final int BAND = 3;
+
+    private final int window, band;
+    // the tuner of the thresholds, see HoughTrans
+    private final double tuner;
+
+    public CircleTracker(){
+        this(WINDOW, BAND, HoughTrans.TUNER);
+    }
+
+    /**
+     * @param window the furthest (in x and in y) a centre is followed
+     * @param band the most a radius is followed by
+     * @param tuner the tuner of the thresholds
+     */
+    public CircleTracker(int window, int band, double tuner){
+        if(window < 0 || band < 0){throw new IllegalArgumentException("invalid window " + window + " or band " + band);}
+        this.window = window;
+        this.band = band;
+        this.tuner = tuner;
+    }
+
+    /**
+     * find the circles of the previous frame in this one
+     * @param canny the edge pixels of the frame
+     * @param previous the circles of the previous frame
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @param step the step between the radii, the same as the full transform's
+     * @param maxCircles the most circles to return
+     * @return the circles that were found again, highest score first
+     */
+    public List<Circle> track(EdgeList canny, List<Circle> previous, int minRadius, int maxRadius, int step, int maxCircles){
+        if(step < 1){throw new IllegalArgumentException("invalid radius step " + step);}
+        // the largest radius that is swept
+        maxRadius = minRadius + Math.max(0, maxRadius - minRadius)/step*step;
+        List<Circle> found = new ArrayList<>();
+        // the thresholds of the radii searched so far, by radius
+        long[] thresholds = new long[maxRadius + 2];
+        // the cells already searched (the windows of circles close together overlap), packed as in key(..)
+        Set<Long> searched = new HashSet<>();
+        for(Circle c : previous){follow(canny, c, minRadius, maxRadius, step, thresholds, searched, found);}
+        return PeakFinder.rank(found, PeakFinder.SEPARATION, maxCircles);
+    }
+
+    private static long key(int x, int y, int r, int width, int height){
+        return ((long) r*height + y)*width + x;
+    }
+
+    /**
+     * add the peaks within the window and band of a circle to found, except the cells that have been searched before
+     */
+    private void follow(EdgeList canny, Circle c, int minRadius, int maxRadius, int step, long[] thresholds, Set<Long> searched, List<Circle> found){
+        int width = canny.width, height = canny.height;
+        // the swept radii within the band
+        int fromR = Math.max(minRadius, c.r - band), toR = Math.min(maxRadius, c.r + band);
+        fromR = minRadius + (fromR - minRadius + step - 1)/step*step;
+        toR = minRadius + (toR - minRadius)/step*step;
+        if(fromR > toR){return;}
+        // the cells one further out are only counted as neighbours
+        int x0 = Math.max(0, c.x - window - 1), x1 = Math.min(width - 1, c.x + window + 1);
+        int y0 = Math.max(0, c.y - window - 1), y1 = Math.min(height - 1, c.y + window + 1);
+        int r0 = Math.max(minRadius, fromR - step), r1 = Math.min(maxRadius, toR + step);
+        int w = x1 - x0 + 1, h = y1 - y0 + 1;
+        int[][] votes = new int[(r1 - r0)/step + 1][w*h];
+        int[] points = new int[votes.length];
+        for(int r = r0; r <= r1; r += step){
+            CircleStencil stencil = CircleStencil.get(r, width);
+            points[(r - r0)/step] = stencil.size();
+            int[] slice = votes[(r - r0)/step];
+            for(int y = y0, index = 0; y <= y1; y++){
+                for(int x = x0; x <= x1; x++, index++){slice[index] = stencil.count(canny.plane, x, y);}
+            }
+        }
+        for(int r = fromR; r <= toR; r += step){
+            long threshold = threshold(canny, r, thresholds);
+            int k = (r - r0)/step;
+            int[] slice = votes[k];
+            for(int y = Math.max(0, c.y - window); y <= Math.min(height - 1, c.y + window); y++){
+                for(int x = Math.max(0, c.x - window); x <= Math.min(width - 1, c.x + window); x++){
+                    int v = slice[(y - y0)*w + x - x0];
+                    if(v <= threshold || !searched.add(key(x, y, r, width, height))){continue;}
+                    if(!isPeak(votes, points, k, x - x0, y - y0, w, h)){continue;}
+                    found.add(new Circle(x, y, r, v, v/(double) points[k]));
+                }
+            }
+        }
+    }
+
+    /**
+     * the same comparison as PeakFinder.isPeak, over the cells of the window
+     * @param k the index of the slice of the cell in votes, the slices are one step apart
+     */
+    private static boolean isPeak(int[][] votes, int[] points, int k, int x, int y, int w, int h){
+        long own = points[k];
+        long mine0 = votes[k][y*w + x];
+        for(int l = Math.max(0, k - 1); l <= Math.min(votes.length - 1, k + 1); l++){
+            int[] slice = votes[l];
+            long other = points[l];
+            for(int j = Math.max(0, y - 1); j <= Math.min(h - 1, y + 1); j++){
+                for(int i = Math.max(0, x - 1); i <= Math.min(w - 1, x + 1); i++){
+                    if(l == k && j == y && i == x){continue;}
+                    long mine = mine0*other, theirs = slice[j*w + i]*own;
+                    if(theirs > mine){return false;}
+                    if(theirs == mine && (l < k || (l == k && (j < y || (j == y && i < x))))){return false;}
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * the threshold of the slice of a radius, counter/(total*tuner) as in HoughTrans, where the counter is the number
+     * of votes all the edge pixels place inside the image. only the edge pixels within the radius of the border of
+     * the image place fewer votes than the circle has points
+     * @param thresholds the thresholds counted so far (0 if not counted yet), the one of radius is added
+     */
+    private long threshold(EdgeList canny, int radius, long[] thresholds){
+        if(thresholds[radius] > 0){return thresholds[radius] - 1;}
+        CircleStencil stencil = CircleStencil.get(radius, canny.width);
+        int width = canny.width, height = canny.height, n = stencil.size(), total = canny.size();
+        long counter = 0;
+        for(int i = 0; i < total; i++){
+            int x = canny.x(i), y = canny.y(i);
+            if(x >= radius && y >= radius && x + radius < width && y + radius < height){counter += n; continue;}
+            for(int p = 0; p < n; p++){
+                if(CannyEdge.inBounds(x + stencil.dx[p], y + stencil.dy[p], width, height)){counter++;}
+            }
+        }
+        long threshold = Math.round(counter/((double) total*tuner));
+        // stored plus one so that 0 means not counted
+        thresholds[radius] = threshold + 1;
+        return threshold;
+    }
+}
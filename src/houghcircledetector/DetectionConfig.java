@@ -0,0 +1,144 @@
+package houghcircledetector;
+
+/**
+ * the parameters of one detection job: the grey weights of the channels, the smoothing kernel, the Canny thresholds,
+ * the radii that are searched, the peak threshold and the most circles returned. a configuration can not be changed
+ * once it is built (use toBuilder() to make a changed copy), and every value is checked when it is built, so one
+ * configuration can be shared by any number of jobs running at the same time and jobs with different configurations
+ * do not affect each other
+ * @author Ntokozo Zwane
+ */
+public final class DetectionConfig {
+    // maxRadius value for searching up to the largest circle that fits in the image
+    public static final int AUTO = 0;
+    // the configuration with all the default values
+    public static final DetectionConfig DEFAULT = builder().build();
+
+    // the weights the channels are turned grey with
+    public final Luma luma;
+    // smoothing kernel size, odd
+    public final int kernelSize;
+    // the standard deviation used for calculating the Gaussian, 0 for no smoothing
+    public final double sigma;
+    // high and low thresholds used when applying nonmaximal supression
+    public final int highThreshold, lowThreshold;
+    // the range of radii searched, maxRadius is AUTO or at least minRadius
+    public final int minRadius, maxRadius;
+    // only every radiusStep-th radius from minRadius on is searched by the Hough transform
+    public final int radiusStep;
+    // the peak threshold, a circle needs about 1/tuner of its points to be edge pixels (see HoughTrans)
+    public final double tuner;
+    // the most circles that are returned for an image
+    public final int maxCircles;
+
+    private DetectionConfig(Builder builder){
+        this.luma = builder.luma;
+        this.kernelSize = builder.kernelSize;
+        this.sigma = builder.sigma;
+        this.highThreshold = builder.highThreshold;
+        this.lowThreshold = builder.lowThreshold;
+        this.minRadius = builder.minRadius;
+        this.maxRadius = builder.maxRadius;
+        this.radiusStep = builder.radiusStep;
+        this.tuner = builder.tuner;
+        this.maxCircles = builder.maxCircles;
+    }
+
+    /**
+     * @return a builder holding the default values
+     */
+    public static Builder builder(){
+        return new Builder();
+    }
+
+    /**
+     * @return a builder holding the values of this configuration
+     */
+    public Builder toBuilder(){
+        Builder builder = new Builder();
+        builder.luma = luma;
+        builder.kernelSize = kernelSize;
+        builder.sigma = sigma;
+        builder.highThreshold = highThreshold;
+        builder.lowThreshold = lowThreshold;
+        builder.minRadius = minRadius;
+        builder.maxRadius = maxRadius;
+        builder.radiusStep = radiusStep;
+        builder.tuner = tuner;
+        builder.maxCircles = maxCircles;
+        return builder;
+    }
+
+    /**
+     * the largest radius searched in an image, maxRadius or (if it is AUTO or larger) the largest circle that fits
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the largest radius
+     */
+    public int lastRadius(int width, int height){
+        int limit = CircleDetector.maxRadius(width, height);
+        return maxRadius == AUTO ? limit : Math.min(maxRadius, limit);
+    }
+
+    @Override
+    public String toString(){
+        return "luma " + luma + ", kernel " + kernelSize + ", sigma " + sigma + ", thresholds " + lowThreshold + "-" + highThreshold +
+                ", radii " + minRadius + "-" + (maxRadius == AUTO ? "auto" : maxRadius + "") + " step " + radiusStep +
+                ", tuner " + tuner + ", max circles " + maxCircles;
+    }
+
+    /**
+     * collects the values of a configuration, the values are only checked by build()
+     */
+    public static final class Builder {
+        private Luma luma = Luma.FX;
+        private int kernelSize = 7;
+        private double sigma = 1.0;
+        private int highThreshold = 200;
+        private int lowThreshold = 100;
+        private int minRadius = 3;
+        private int maxRadius = AUTO;
+        private int radiusStep = 1;
+        private double tuner = HoughTrans.TUNER;
+        private int maxCircles = 64;
+
+        private Builder(){}
+
+        public Builder luma(Luma luma){this.luma = luma; return this;}
+
+        public Builder kernelSize(int kernelSize){this.kernelSize = kernelSize; return this;}
+
+        public Builder sigma(double sigma){this.sigma = sigma; return this;}
+
+        public Builder highThreshold(int highThreshold){this.highThreshold = highThreshold; return this;}
+
+        public Builder lowThreshold(int lowThreshold){this.lowThreshold = lowThreshold; return this;}
+
+        public Builder minRadius(int minRadius){this.minRadius = minRadius; return this;}
+
+        public Builder maxRadius(int maxRadius){this.maxRadius = maxRadius; return this;}
+
+        public Builder radiusStep(int radiusStep){this.radiusStep = radiusStep; return this;}
+
+        public Builder tuner(double tuner){this.tuner = tuner; return this;}
+
+        public Builder maxCircles(int maxCircles){this.maxCircles = maxCircles; return this;}
+
+        /**
+         * @return the configuration
+         * @throws IllegalArgumentException if any of the values is out of range
+         */
+        public DetectionConfig build(){
+            if(luma == null){throw new IllegalArgumentException("no luma weights");}
+            if(kernelSize < 1 || kernelSize > 21 || kernelSize % 2 == 0){throw new IllegalArgumentException("kernel size must be odd and between 1 and 21");}
+            if(!(sigma >= 0 && sigma <= 10)){throw new IllegalArgumentException("sigma must be between 0 and 10");}
+            if(lowThreshold < 0 || highThreshold > 255 || lowThreshold > highThreshold){throw new IllegalArgumentException("thresholds must be between 0 and 255, the low one at most the high one");}
+            if(minRadius < 1){throw new IllegalArgumentException("the smallest radius must be at least 1");}
+            if(maxRadius != AUTO && maxRadius < minRadius){throw new IllegalArgumentException("the largest radius must be at least the smallest one");}
+            if(radiusStep < 1){throw new IllegalArgumentException("the radius step must be at least 1");}
+            if(!(tuner >= 1 && tuner <= 100)){throw new IllegalArgumentException("the peak threshold must be between 1 and 100");}
+            if(maxCircles < 1){throw new IllegalArgumentException("the most circles must be at least 1");}
+            return new DetectionConfig(this);
+        }
+    }
+}
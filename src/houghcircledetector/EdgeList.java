@@ -0,0 +1,133 @@
+package houghcircledetector;
+
+import java.util.Arrays;
+
+/**
+ * the edge pixels found by Canny Edge Detection, as a compact list rather than a whole image. each point is packed
+ * into a single int as (y << 16) | x (so images can be at most 65536 pixels wide and high), optionally along with
+ * the direction class of its derivative. the Hough transform iterates over this list, so its cost depends on the
+ * number of edges rather than the size of the image. the edge image the list was made from is kept for display
+ * @author Ntokozo Zwane
+ */
+public final class EdgeList {
+    // the largest width/height that fits into a packed point
+    static final int MAX_SIZE = 1 << 16;
+
+    public final int width, height;
+    // the edge image (255 for edge pixels, 0 otherwise)
+    public final BytePlane plane;
+
+    private int[] points;
+    private byte[] directions;
+    private int size;
+
+    /**
+     * @param plane the edge image the points are taken from
+     * @param withDirections true if a direction class is stored with each point
+     */
+    EdgeList(BytePlane plane, boolean withDirections){
+        if(plane.width > MAX_SIZE || plane.height > MAX_SIZE){throw new IllegalArgumentException("image too large for an edge list");}
+        this.width = plane.width;
+        this.height = plane.height;
+        this.plane = plane;
+        this.points = new int[64];
+        this.directions = withDirections ? new byte[64] : null;
+    }
+
+    /**
+     * collect the "on" pixels (255) of an edge image, in row order
+     * @param canny the edge image
+     * @return the list of edge pixels
+     */
+    public static EdgeList fromPlane(BytePlane canny){
+        EdgeList list = new EdgeList(canny, false);
+        byte[] edges = canny.data;
+        for(int y = 0, index = 0; y < canny.height; y++){
+            for(int x = 0; x < canny.width; x++, index++){
+                if(edges[index] == (byte) 255){list.add(x, y, 0);}
+            }
+        }
+        return list;
+    }
+
+    /**
+     * collect the "on" pixels (255) of an edge image in row order, along with the direction class of each
+     * @param canny the edge image
+     * @param direction the direction classes of the derivatives, null if they are not needed
+     * @return the list of edge pixels
+     */
+    static EdgeList fromPlane(BytePlane canny, BytePlane direction){
+        if(direction == null){return fromPlane(canny);}
+        EdgeList list = new EdgeList(canny, true);
+        byte[] edges = canny.data, dir = direction.data;
+        for(int y = 0, index = 0; y < canny.height; y++){
+            for(int x = 0; x < canny.width; x++, index++){
+                if(edges[index] == (byte) 255){list.add(x, y, dir[index]);}
+            }
+        }
+        return list;
+    }
+
+    /**
+     * append a point to the list
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @param direction the direction class, ignored if the list does not store directions
+     */
+    void add(int x, int y, int direction){
+        if(size == points.length){
+            points = Arrays.copyOf(points, 2*size);
+            if(directions != null){directions = Arrays.copyOf(directions, 2*size);}
+        }
+        points[size] = (y << 16) | x;
+        if(directions != null){directions[size] = (byte) direction;}
+        size++;
+    }
+
+    /**
+     * @return the number of edge pixels
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @param i the position in the list
+     * @return the x coordinate of the point
+     */
+    public int x(int i){
+        return points[i] & 0xFFFF;
+    }
+
+    /**
+     * @param i the position in the list
+     * @return the y coordinate of the point
+     */
+    public int y(int i){
+        return points[i] >>> 16;
+    }
+
+    /**
+     * @param i the position in the list
+     * @return the packed (y << 16) | x coordinates of the point
+     */
+    public int packed(int i){
+        return points[i];
+    }
+
+    /**
+     * @return true if a direction class is stored with each point
+     */
+    public boolean hasDirections(){
+        return directions != null;
+    }
+
+    /**
+     * @param i the position in the list
+     * @return the direction class of the derivative at the point (see CannyEdge.DIR_0 etc.)
+     */
+    public int direction(int i){
+        if(directions == null){throw new IllegalStateException("the edge list holds no directions");}
+        return directions[i];
+    }
+}
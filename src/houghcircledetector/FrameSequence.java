@@ -0,0 +1,190 @@
+package houghcircledetector;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * the frames of an image sequence, read one at a time: the images of a list of files in order, where a file that
+ * holds more than one image (such as an animated GIF) gives all of its images in order. the frames of an animated GIF
+ * only hold the part of the picture that changed, so they are drawn over the frames before them (following the
+ * disposal method of each frame) to give whole pictures. only java.awt/javax.imageio are used, see BatchDetector
+ * @author Ntokozo Zwane
+ */
+public class FrameSequence implements Closeable {
+    private static final String GIF_IMAGE = "javax_imageio_gif_image_1.0";
+    private static final String GIF_STREAM = "javax_imageio_gif_stream_1.0";
+
+    /**
+     * one frame of the sequence
+     */
+    public static final class Frame {
+        // the position of the frame in the sequence, from 0
+        public final int index;
+        // the file the frame is read from, and the number of the image in the file (from 0)
+        public final File file;
+        public final int image;
+        // the pixels in argb form, row by row
+        public final int[] argb;
+        public final int width, height;
+
+        Frame(int index, File file, int image, int[] argb, int width, int height){
+            this.index = index;
+            this.file = file;
+            this.image = image;
+            this.argb = argb;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final Iterator<File> files;
+    private int index = 0;
+
+    // the file being read, its reader and the number of the next image in it
+    private File file;
+    private ImageInputStream stream;
+    private ImageReader reader;
+    private int image;
+    // the picture the frames of an animated GIF are drawn over, null for other files
+    private BufferedImage canvas;
+
+    /**
+     * @param files the files the frames are read from, in order
+     */
+    public FrameSequence(List<File> files){
+        this.files = new ArrayList<>(files).iterator();
+    }
+
+    /**
+     * @return the next frame, null if there are none left
+     * @throws IOException if a file can not be read
+     */
+    public Frame next() throws IOException {
+        while(true){
+            if(reader == null && !open()){return null;}
+            BufferedImage read;
+            try{
+                read = reader.read(image);
+            }catch(IndexOutOfBoundsException e){
+                // past the last image of the file
+                if(image == 0){throw new IOException(file + ": no image in the file");}
+                closeFile();
+                continue;
+            }
+            if(read == null){throw new IOException(file + ": unable to read image " + image);}
+            BufferedImage picture = canvas == null ? read : compose(read, reader.getImageMetadata(image), image == 0);
+            int width = picture.getWidth(), height = picture.getHeight();
+            int[] argb = picture.getRGB(0, 0, width, height, null, 0, width);
+            return new Frame(index++, file, image++, argb, width, height);
+        }
+    }
+
+    /**
+     * open the next file
+     * @return false if there are no files left
+     */
+    private boolean open() throws IOException {
+        if(!files.hasNext()){return false;}
+        file = files.next();
+        stream = ImageIO.createImageInputStream(file);
+        if(stream == null){throw new IOException(file + ": unable to open");}
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if(!readers.hasNext()){
+            stream.close();
+            throw new IOException(file + ": not a readable image");
+        }
+        reader = readers.next();
+        reader.setInput(stream, false);
+        image = 0;
+        canvas = null;
+        IIOMetadata metadata = reader.getStreamMetadata();
+        if(metadata != null && GIF_STREAM.equals(metadata.getNativeMetadataFormatName())){
+            Node screen = child(metadata.getAsTree(GIF_STREAM), "LogicalScreenDescriptor");
+            int width = attribute(screen, "logicalScreenWidth", 0), height = attribute(screen, "logicalScreenHeight", 0);
+            if(width <= 0 || height <= 0){
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+            }
+            canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        return true;
+    }
+
+    /**
+     * draw a frame of an animated GIF over the canvas
+     * @param first true for the first frame, which replaces the canvas (transparent pixels and all) so that a GIF
+     * with a single image gives the same pixels as ImageIO.read
+     * @return the picture the frame gives, the canvas is then disposed of for the next frame
+     */
+    private BufferedImage compose(BufferedImage read, IIOMetadata metadata, boolean first){
+        Node tree = metadata.getAsTree(GIF_IMAGE);
+        Node descriptor = child(tree, "ImageDescriptor");
+        int left = attribute(descriptor, "imageLeftPosition", 0), top = attribute(descriptor, "imageTopPosition", 0);
+        Node control = child(tree, "GraphicControlExtension");
+        String disposal = control == null ? "none" : control.getAttributes().getNamedItem("disposalMethod").getNodeValue();
+
+        BufferedImage before = disposal.equals("restoreToPrevious") ? copy(canvas) : null;
+        Graphics2D g = canvas.createGraphics();
+        if(first){g.setComposite(AlphaComposite.Src);}
+        g.drawImage(read, left, top, null);
+        g.dispose();
+        BufferedImage picture = copy(canvas);
+        if(before != null){canvas = before;}
+        else if(disposal.equals("restoreToBackgroundColor")){
+            Graphics2D clear = canvas.createGraphics();
+            clear.setComposite(AlphaComposite.Clear);
+            clear.fillRect(left, top, read.getWidth(), read.getHeight());
+            clear.dispose();
+        }
+        return picture;
+    }
+
+    private static BufferedImage copy(BufferedImage image){
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = copy.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+
+    private static Node child(Node node, String name){
+        for(Node c = node.getFirstChild(); c != null; c = c.getNextSibling()){
+            if(c.getNodeName().equals(name)){return c;}
+        }
+        return null;
+    }
+
+    private static int attribute(Node node, String name, int otherwise){
+        if(node == null){return otherwise;}
+        NamedNodeMap attributes = node.getAttributes();
+        Node value = attributes == null ? null : attributes.getNamedItem(name);
+        return value == null ? otherwise : Integer.parseInt(value.getNodeValue());
+    }
+
+    private void closeFile() throws IOException {
+        reader.dispose();
+        reader = null;
+        stream.close();
+        stream = null;
+        canvas = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(reader != null){closeFile();}
+    }
+}
@@ -0,0 +1,56 @@
+package houghcircledetector;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * one dimensional Gaussian kernel used for smoothing the image. the 2D Gaussian is separable, so convolving
+ * with this kernel along the rows and then along the columns gives the same result as convolving with the
+ * full size x size kernel, at a cost that is linear (rather than quadratic) in the kernel size.
+ * the weights are stored as fixed point integers with SHIFT fractional bits. the product of two weights is the
+ * value the 2D kernel had at that position: cons*exp(-(x*x + y*y)/(2*sigma*sigma)), cons = 1/(2*pi*sigma*sigma).
+ * the weights are not normalised (as the 2D kernel was not), for a small sigma they sum to far more than ONE and the
+ * smoothed values are clamped to 255. below MIN_SIGMA the weights would not fit, so the kernel does no smoothing
+ * kernels are cached per (size, sigma) since the same few are requested over and over again
+ * @author Ntokozo Zwane
+ */
+public final class GaussianKernel {
+    // number of fractional bits in the weights
+    static final int SHIFT = 10;
+    static final int ONE = 1 << SHIFT;
+    // the smallest sigma that smooths, the centre weight is then about 400*ONE
+    static final double MIN_SIGMA = 1e-3;
+
+    private static final ConcurrentHashMap<String, GaussianKernel> CACHE = new ConcurrentHashMap<>();
+
+    public final int size;
+    public final double sigma;
+    // the weights for the offsets -radius..radius
+    public final int[] weights;
+    public final int radius;
+
+    private GaussianKernel(int size, double sigma){
+        this.size = size;
+        this.sigma = sigma;
+        this.radius = size/2;
+        this.weights = new int[2*radius + 1];
+        if(sigma < MIN_SIGMA){ // no smoothing
+            weights[radius] = ONE;
+            return;
+        }
+        double cons = 1.0/(Math.sqrt(2*Math.PI)*sigma);
+        double denominator = 2*sigma*sigma;
+        for(int x = -radius; x <= radius; x++){
+            weights[x + radius] = (int) Math.round(cons*Math.exp(-(x*x)/denominator)*ONE);
+        }
+    }
+
+    /**
+     * @param size the kernel size (the width of the 2D kernel)
+     * @param sigma the standard deviation of the Gaussian
+     * @return the (cached) kernel
+     */
+    public static GaussianKernel get(int size, double sigma){
+        if(size < 1){throw new IllegalArgumentException("invalid kernel size " + size);}
+        return CACHE.computeIfAbsent(size + ":" + sigma, key -> new GaussianKernel(size, sigma));
+    }
+}
@@ -0,0 +1,17 @@
+package houghcircledetector;
+
+/**
+ * the output of the gradient stage of Canny Edge Detection: the magnitude of the derivatives of each pixel
+ * and the direction class of the derivative (one of CannyEdge.DIR_0, DIR_45, DIR_90 or DIR_135)
+ * @author Ntokozo Zwane
+ */
+public final class Gradient {
+    
+    public final ShortPlane magnitude;
+    public final BytePlane direction;
+    
+    public Gradient(ShortPlane magnitude, BytePlane direction){
+        this.magnitude = magnitude;
+        this.direction = direction;
+    }
+}
@@ -0,0 +1,392 @@
+package houghcircledetector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * the gradient directed (two stage) Hough circle transform. the derivative of an edge pixel on a circle points
+ * towards (or away from) the centre of that circle, so rather than drawing a whole circle for every radius (as
+ * HoughTrans does) each edge pixel only votes along the line through its derivative:
+ * 1. every edge pixel votes for the points at distance minRadius - maxRadius on both sides of it along its
+ *    derivative, into a single 2D accumulator of centres
+ * 2. the local maxima of the centre accumulator are the candidate centres. the radius of each candidate is found
+ *    with a histogram of the distances from the candidate to the nearby edge pixels, and the candidate is kept if
+ *    enough of the circle with that radius is covered by edge pixels
+ * this costs O(edges*maxRadius) votes and a 2D (rather than 3D) accumulator. given a pool, the candidates are
+ * checked concurrently
+ * @author Ntokozo Zwane
+ */
+public class GradientHough {
+    // the sobel operator is summed over the (2*DERIVATIVE_WINDOW + 1)^2 pixels around an edge pixel
+    static final int DERIVATIVE_WINDOW = 2;
+    // the smallest number of votes a centre needs to be a candidate
+    static final int MIN_CENTRE_VOTES = 10;
+    // candidate centres must be the maximum of the (2*CENTRE_WINDOW + 1)^2 window around them
+    static final int CENTRE_WINDOW = 3;
+    // the fraction of the circumference of a circle that has to be covered by edge pixels (both in number of
+    // pixels and in the angle around the centre that they are spread over)
+    static final double MIN_COVERAGE = 0.5;
+    // the job is checked every EDGE_CHECK edge pixels while voting the centres
+    static final int EDGE_CHECK = 256;
+    // the smallest side of the cells the edge pixels are sorted into, see EdgeGrid
+    static final int MIN_CELL = 16;
+    // the candidates are split into SPLIT*parallelism chunks, so that the work can be balanced
+    static final int SPLIT = 4;
+
+    // the pool the candidates are checked on, null to check them on the calling thread
+    private final ForkJoinPool pool;
+
+    public GradientHough(){
+        this(null);
+    }
+
+    /**
+     * @param pool the pool the candidates are checked on, null to check them on the calling thread
+     */
+    public GradientHough(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    /**
+     * detect the circles and draw them into an array
+     * @param canny the edge pixels of the image
+     * @param smoothed the smoothed image the edges were found in, used to compute the derivatives of the edge pixels
+     * @param toDraw the array the circles are drawn into
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @return the value of the maximum pixel, this will be used for normalizing the pixel values
+     */
+    public int hough(EdgeList canny, BytePlane smoothed, IntPlane toDraw, int minRadius, int maxRadius){
+        HoughTrans houghT = new HoughTrans();
+        for(Circle circle : circles(canny, smoothed, minRadius, maxRadius, Integer.MAX_VALUE)){
+            houghT.revTransformPT(circle.r, circle.x, circle.y, canny.width, canny.height, toDraw.data);
+        }
+        return toDraw.max();
+    }
+
+    /**
+     * detect the circles. the score of a circle is the fraction of the points of its circle (see CircleStencil) that
+     * have an edge pixel within one pixel of them
+     * @param canny the edge pixels of the image
+     * @param smoothed the smoothed image the edges were found in
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @param maxCircles the most circles to return
+     * @return the circles, highest score first
+     */
+    public List<Circle> circles(EdgeList canny, BytePlane smoothed, int minRadius, int maxRadius, int maxCircles){
+        return circles(canny, smoothed, minRadius, maxRadius, maxCircles, Job.NONE);
+    }
+
+    /**
+     * @param job the job the detection runs for, it is checked every EDGE_CHECK edge pixels and before each
+     * candidate centre
+     * @see #circles(EdgeList, BytePlane, int, int, int)
+     */
+    List<Circle> circles(EdgeList canny, BytePlane smoothed, int minRadius, int maxRadius, int maxCircles, Job job){
+        List<Circle> found = new ArrayList<>();
+        if(minRadius > maxRadius || canny.size() == 0){return found;}
+        IntPlane centres = voteCentres(canny, smoothed, minRadius, maxRadius, job);
+        // cells of about half the search band, so that the cells inside the smallest circle are skipped
+        EdgeGrid grid = new EdgeGrid(canny, Math.max(MIN_CELL, Math.min(maxRadius, (maxRadius - minRadius)/2)));
+        List<int[]> candidates = candidates(centres);
+        Circle[] circles = new Circle[candidates.size()];
+        int chunks = pool == null ? 1 : Math.min(circles.length, SPLIT*pool.getParallelism());
+        if(chunks <= 1){
+            check(grid, candidates, 0, circles.length, minRadius, maxRadius, circles, job);
+        }else{
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+            for(int c = 0; c < chunks; c++){
+                int from = (int) ((long) circles.length*c/chunks), to = (int) ((long) circles.length*(c + 1)/chunks);
+                tasks.add(ForkJoinTask.adapt(() -> check(grid, candidates, from, to, minRadius, maxRadius, circles, job)));
+            }
+            for(ForkJoinTask<?> task : tasks){pool.execute(task);}
+            for(ForkJoinTask<?> task : tasks){task.join();}
+        }
+        for(Circle circle : circles){
+            if(circle != null){found.add(circle);}
+        }
+        // circles that have been found through neighbouring centres are merged
+        return PeakFinder.rank(found, CENTRE_WINDOW, maxCircles);
+    }
+
+    /**
+     * stage 2b for the candidates from - to (exclusive), the circle of candidate i is put at circles[i] (null if the
+     * candidate is not a circle)
+     */
+    private static void check(EdgeGrid grid, List<int[]> candidates, int from, int to, int minRadius, int maxRadius, Circle[] circles, Job job){
+        int[] histogram = new int[maxRadius + 2];
+        for(int i = from; i < to; i++){
+            job.check();
+            int[] candidate = candidates.get(i);
+            circles[i] = grid.circle(candidate[0], candidate[1], candidate[2], minRadius, maxRadius, histogram);
+        }
+    }
+
+    /**
+     * stage 1: every edge pixel votes along its derivative, on both sides, for the centres at distance
+     * minRadius - maxRadius
+     * @return the centre accumulator
+     */
+    IntPlane voteCentres(EdgeList canny, BytePlane smoothed, int minRadius, int maxRadius, Job job){
+        int width = canny.width, height = canny.height;
+        IntPlane centres = new IntPlane(width, height);
+        int[] acc = centres.data;
+        byte[] in = smoothed.data;
+        int[] derivative = new int[2];
+        for(int i = 0, n = canny.size(); i < n; i++){
+            if(i % EDGE_CHECK == 0){job.check();}
+            int x = canny.x(i), y = canny.y(i);
+            derivative(in, width, height, x, y, derivative);
+            int gx = derivative[0], gy = derivative[1];
+            if(gx == 0 && gy == 0){continue;}
+            double length = Math.sqrt(gx*gx + gy*gy);
+            double ux = gx/length, uy = gy/length;
+            for(int sign = -1; sign <= 1; sign += 2){
+                double sx = sign*ux, sy = sign*uy;
+                for(int r = minRadius; r <= maxRadius; r++){
+                    int cx = (int) Math.round(x + r*sx), cy = (int) Math.round(y + r*sy);
+                    if(cx < 0 || cy < 0 || cx >= width || cy >= height){break;} // further along is outside too
+                    acc[cy*width + cx]++;
+                }
+            }
+        }
+        return centres;
+    }
+
+    /**
+     * the direction of the derivative at an edge pixel. a single 3x3 sobel window gives a coarse direction on
+     * jagged (aliased) edges, which far from the edge pixel puts its votes well off the centre. so the sobel operator
+     * is summed over the (2*DERIVATIVE_WINDOW + 1)^2 pixels around the edge pixel, pixels outside of the image count as 0
+     * @param in the smoothed image
+     * @param derivative receives the x and y directional derivatives
+     */
+    static void derivative(byte[] in, int width, int height, int x, int y, int[] derivative){
+        int gx = 0, gy = 0;
+        for(int v = -DERIVATIVE_WINDOW - 1; v <= DERIVATIVE_WINDOW + 1; v++){
+            for(int u = -DERIVATIVE_WINDOW - 1; u <= DERIVATIVE_WINDOW + 1; u++){
+                if(!CannyEdge.inBounds(x + u, y + v, width, height)){continue;}
+                int grey = in[(y + v)*width + x + u] & 0xFF;
+                // the sum of the sobel weights that this pixel gets from all the windows it falls in
+                gx += weight(u)*spread(v)*grey;
+                gy += weight(v)*spread(u)*grey;
+            }
+        }
+        derivative[0] = gx;
+        derivative[1] = gy;
+    }
+    
+    /**
+     * @return the summed derivative weight (-1, 0, 1 per window) of a pixel at offset d from the edge pixel
+     */
+    private static int weight(int d){
+        int sum = 0;
+        for(int c = -DERIVATIVE_WINDOW; c <= DERIVATIVE_WINDOW; c++){
+            if(Math.abs(d - c) == 1){sum += d - c;}
+        }
+        return sum;
+    }
+    
+    /**
+     * @return the summed smoothing weight (1, 2, 1 per window) of a pixel at offset d from the edge pixel
+     */
+    private static int spread(int d){
+        int sum = 0;
+        for(int c = -DERIVATIVE_WINDOW; c <= DERIVATIVE_WINDOW; c++){
+            int off = Math.abs(d - c);
+            if(off <= 1){sum += 2 - off;}
+        }
+        return sum;
+    }
+    
+    /**
+     * stage 2a: the candidate centres. the votes for a centre are spread over a few pixels (the directions of the
+     * derivatives are not exact), so the votes are first summed over a (2*CENTRE_WINDOW + 1)^2 window. the local
+     * maxima of these sums with at least MIN_CENTRE_VOTES votes are the candidates, and each candidate is moved to
+     * the centroid of the votes in its window
+     * @return the candidates as {x, y, votes}, most votes first
+     */
+    List<int[]> candidates(IntPlane centres){
+        int width = centres.width, height = centres.height;
+        int[] acc = centres.data;
+        int[] sums = boxSums(acc, width, height, CENTRE_WINDOW);
+        List<int[]> candidates = new ArrayList<>();
+        for(int y = 0, index = 0; y < height; y++){
+            for(int x = 0; x < width; x++, index++){
+                int votes = sums[index];
+                if(votes < MIN_CENTRE_VOTES){continue;}
+                boolean max = true;
+                for(int j = Math.max(0, y - CENTRE_WINDOW); max && j <= Math.min(height - 1, y + CENTRE_WINDOW); j++){
+                    for(int i = Math.max(0, x - CENTRE_WINDOW); i <= Math.min(width - 1, x + CENTRE_WINDOW); i++){
+                        int other = sums[j*width + i];
+                        // ties go to the first pixel in row order
+                        if(other > votes || (other == votes && j*width + i < index)){max = false; break;}
+                    }
+                }
+                if(!max){continue;}
+                long sumX = 0, sumY = 0, total = 0;
+                for(int j = Math.max(0, y - CENTRE_WINDOW); j <= Math.min(height - 1, y + CENTRE_WINDOW); j++){
+                    for(int i = Math.max(0, x - CENTRE_WINDOW); i <= Math.min(width - 1, x + CENTRE_WINDOW); i++){
+                        int v = acc[j*width + i];
+                        sumX += (long) v*i; sumY += (long) v*j; total += v;
+                    }
+                }
+                candidates.add(new int[]{(int) Math.round(sumX/(double) total), (int) Math.round(sumY/(double) total), votes});
+            }
+        }
+        Collections.sort(candidates, (a, b) -> a[2] != b[2] ? b[2] - a[2] : (a[1] != b[1] ? a[1] - b[1] : a[0] - b[0]));
+        return candidates;
+    }
+    
+    /**
+     * @return the sum of the (2*window + 1)^2 values around each pixel (clipped to the image), computed as a
+     * horizontal and then a vertical running sum
+     */
+    static int[] boxSums(int[] values, int width, int height, int window){
+        int[] rows = new int[values.length];
+        for(int y = 0; y < height; y++){
+            int rowStart = y*width, sum = 0;
+            for(int x = 0; x < Math.min(window, width); x++){sum += values[rowStart + x];}
+            for(int x = 0; x < width; x++){
+                if(x + window < width){sum += values[rowStart + x + window];}
+                if(x - window - 1 >= 0){sum -= values[rowStart + x - window - 1];}
+                rows[rowStart + x] = sum;
+            }
+        }
+        int[] sums = new int[values.length];
+        for(int x = 0; x < width; x++){
+            int sum = 0;
+            for(int y = 0; y < Math.min(window, height); y++){sum += rows[y*width + x];}
+            for(int y = 0; y < height; y++){
+                if(y + window < height){sum += rows[(y + window)*width + x];}
+                if(y - window - 1 >= 0){sum -= rows[(y - window - 1)*width + x];}
+                sums[y*width + x] = sum;
+            }
+        }
+        return sums;
+    }
+    
+    /**
+     * the edge pixels sorted into square cells, so the edge pixels at a distance from a point can be found without
+     * going through the whole list (only the cells that the ring of those distances crosses are looked at)
+     */
+    static final class EdgeGrid {
+        final int cell, columns, rows;
+        // the points of cell c are points[start[c]] .. points[start[c + 1] - 1]
+        final int[] start, points;
+        final BytePlane edges;
+
+        EdgeGrid(EdgeList canny, int cell){
+            this.edges = canny.plane;
+            this.cell = Math.max(1, cell);
+            columns = (canny.width + this.cell - 1)/this.cell;
+            rows = (canny.height + this.cell - 1)/this.cell;
+            int n = canny.size();
+            start = new int[columns*rows + 1];
+            points = new int[n];
+            for(int i = 0; i < n; i++){start[cellOf(canny.x(i), canny.y(i)) + 1]++;}
+            for(int c = 0; c < columns*rows; c++){start[c + 1] += start[c];}
+            int[] next = Arrays.copyOf(start, columns*rows);
+            for(int i = 0; i < n; i++){points[next[cellOf(canny.x(i), canny.y(i))]++] = canny.packed(i);}
+        }
+
+        int cellOf(int x, int y){
+            return (y/cell)*columns + x/cell;
+        }
+
+        /**
+         * @return whether cell (column, row) has points at a squared distance of inner - outer from (cx, cy)
+         */
+        private boolean crosses(int column, int row, int cx, int cy, long inner, long outer){
+            int x0 = column*cell, x1 = x0 + cell - 1, y0 = row*cell, y1 = y0 + cell - 1;
+            // the nearest and the furthest point of the cell
+            long nx = Math.max(0, Math.max(x0 - cx, cx - x1)), ny = Math.max(0, Math.max(y0 - cy, cy - y1));
+            long fx = Math.max(Math.abs(x0 - cx), Math.abs(x1 - cx)), fy = Math.max(Math.abs(y0 - cy), Math.abs(y1 - cy));
+            return nx*nx + ny*ny <= outer && fx*fx + fy*fy >= inner;
+        }
+
+        /**
+         * stage 2b: find the radius of a candidate centre from the histogram of the distances to the edge pixels. the
+         * edge pixels at that distance must also be spread around the centre (rather than all lying on one side of it,
+         * as they do for a centre just next to a straight edge)
+         * @param votes the votes of the centre
+         * @param histogram scratch space of at least maxRadius + 2 entries
+         * @return the circle, or null if no radius has enough edge pixels on its circle
+         */
+        Circle circle(int cx, int cy, int votes, int minRadius, int maxRadius, int[] histogram){
+            Arrays.fill(histogram, 0);
+            int low = Math.max(0, minRadius - 2);
+            long limit = (maxRadius + 1)*(long) (maxRadius + 1), least = low*(long) low;
+            int fromX = Math.max(0, (cx - maxRadius - 1)/cell), toX = Math.min(columns - 1, (cx + maxRadius + 1)/cell);
+            int fromY = Math.max(0, (cy - maxRadius - 1)/cell), toY = Math.min(rows - 1, (cy + maxRadius + 1)/cell);
+            for(int row = fromY; row <= toY; row++){
+                for(int column = fromX; column <= toX; column++){
+                    if(!crosses(column, row, cx, cy, least, limit)){continue;}
+                    int c = row*columns + column;
+                    for(int p = start[c]; p < start[c + 1]; p++){
+                        int dx = (points[p] & 0xFFFF) - cx, dy = (points[p] >>> 16) - cy;
+                        int d2 = dx*dx + dy*dy;
+                        if(d2 >= limit){continue;}
+                        histogram[(int) Math.round(Math.sqrt(d2))]++;
+                    }
+                }
+            }
+            // a digital circle spreads over neighbouring distances, so each radius is scored with its neighbours. this
+            // only picks the radius, the score of the circle is counted on its points below
+            int best = -1;
+            double bestShare = MIN_COVERAGE;
+            for(int r = Math.max(1, minRadius); r <= maxRadius; r++){
+                int score = histogram[r - 1] + histogram[r] + histogram[r + 1];
+                double share = score/(2*Math.PI*r);
+                if(share > bestShare){bestShare = share; best = r;}
+            }
+            if(best < 0){return null;}
+            
+            // count the sectors around the centre that have an edge pixel on the circle
+            int sectors = Math.min(32, 4*best), hit = 0;
+            int inner = (best - 1)*(best - 1), outer = (best + 1)*(best + 1);
+            for(int row = fromY; row <= toY; row++){
+                for(int column = fromX; column <= toX; column++){
+                    if(!crosses(column, row, cx, cy, inner, outer)){continue;}
+                    int c = row*columns + column;
+                    for(int p = start[c]; p < start[c + 1]; p++){
+                        int dx = (points[p] & 0xFFFF) - cx, dy = (points[p] >>> 16) - cy;
+                        int d2 = dx*dx + dy*dy;
+                        if(d2 < inner || d2 > outer){continue;}
+                        int sector = (int) ((Math.atan2(dy, dx) + Math.PI)/(2*Math.PI)*sectors);
+                        hit |= 1 << Math.min(sector, sectors - 1);
+                    }
+                }
+            }
+            if(Integer.bitCount(hit) < MIN_COVERAGE*sectors){return null;}
+            double coverage = coverage(cx, cy, best);
+            return coverage < MIN_COVERAGE ? null : new Circle(cx, cy, best, votes, coverage);
+        }
+
+        /**
+         * the histogram counts the edge pixels in a band three distances wide, which holds more edge pixels than the
+         * circle has points where an edge is thick or doubled, so the score of a circle is counted on its points
+         * @return the fraction of the points of the circle that have an edge pixel within one pixel of them
+         */
+        double coverage(int cx, int cy, int radius){
+            int width = edges.width, height = edges.height;
+            byte[] data = edges.data;
+            CircleStencil stencil = CircleStencil.get(radius, width);
+            int covered = 0, n = stencil.size();
+            for(int p = 0; p < n; p++){
+                int x = cx + stencil.dx[p], y = cy + stencil.dy[p];
+                search:
+                for(int j = Math.max(0, y - 1); j <= Math.min(height - 1, y + 1); j++){
+                    for(int i = Math.max(0, x - 1); i <= Math.min(width - 1, x + 1); i++){
+                        if(data[j*width + i] == (byte) 255){covered++; break search;}
+                    }
+                }
+            }
+            return covered/(double) n;
+        }
+    }
+}
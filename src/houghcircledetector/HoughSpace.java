@@ -0,0 +1,191 @@
+package houghcircledetector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * the whole (a, b, r) Hough space of a set of edge pixels, kept in memory so that it can be updated when the edge
+ * pixels change rather than voted again from scratch. when only the Canny thresholds change most of the edge pixels
+ * stay the same, so only the pixels that were added vote and the pixels that were taken away have their votes taken
+ * back, which gives exactly the same space as voting all the new edge pixels. the peaks (see PeakFinder) are then
+ * found in the kept slices without any voting.
+ * the slices are held as chars when the counts fit (see Slice), and a space is only kept if it fits in SPACE_BUDGET
+ * bytes. the radii are split over the threads of the pool, every
+ * radius is voted by a single thread so the result does not depend on the number of threads
+ * @author Ntokozo Zwane
+ */
+final class HoughSpace {
+    // the most memory (over all the radius slices) a kept space can take, a quarter of the heap up to 256MB
+    static final long SPACE_BUDGET = Math.min(1L << 28, Runtime.getRuntime().maxMemory()/4);
+    // each thread gets about 1/SPLIT of its share of the radii at a time, so that the work can be balanced
+    static final int SPLIT = 4;
+
+    final int width, height, minRadius, maxRadius, step;
+    // the slice of the radius minRadius + k*step is slices[k], allocated by the thread that first votes it
+    private final Slice[] slices;
+    // the storage of the slices
+    private final Slice.Kind kind;
+    // the number of votes placed in each slice
+    private final int[] counters;
+    // the edge image the space holds the votes of (null while voting), and the number of its edge pixels
+    private BytePlane edges;
+    private int total;
+    // true while the slices hold no votes at all
+    private boolean clean = true;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @param step the difference between the radii, see HoughTrans
+     * @param pool the pool the voting is run on
+     */
+    HoughSpace(int width, int height, int minRadius, int maxRadius, int step, ForkJoinPool pool){
+        if(!fits(width, height, minRadius, maxRadius, step)){throw new IllegalArgumentException("the Hough space is too large to keep");}
+        this.width = width;
+        this.height = height;
+        this.minRadius = minRadius;
+        this.maxRadius = maxRadius;
+        this.step = step;
+        this.pool = pool;
+        int radii = (maxRadius - minRadius)/step + 1;
+        kind = kind(width, maxRadius);
+        slices = new Slice[radii];
+        counters = new int[radii];
+    }
+
+    /**
+     * @return true if the space of these radii fits in SPACE_BUDGET bytes
+     */
+    static boolean fits(int width, int height, int minRadius, int maxRadius, int step){
+        return minRadius <= maxRadius && ((maxRadius - minRadius)/step + 1)*Slice.bytes(kind(width, maxRadius), width*height, 0) <= SPACE_BUDGET;
+    }
+
+    /**
+     * @return the storage of the slices, the smallest dense one the counts of the largest circle fit in (the edge
+     * pixels change, so the slices are never sparse)
+     */
+    private static Slice.Kind kind(int width, int maxRadius){
+        return Slice.dense(CircleStencil.get(maxRadius, width).size());
+    }
+
+    /**
+     * @return true if this space holds the votes of these radii
+     */
+    boolean holds(int width, int height, int minRadius, int maxRadius, int step){
+        return this.width == width && this.height == height && this.minRadius == minRadius && this.maxRadius == maxRadius && this.step == step;
+    }
+
+    /**
+     * make the space hold the votes of a set of edge pixels. only the pixels that differ from the edge pixels the
+     * space holds now vote (or have their votes taken back), unless so many differ that voting them all is cheaper
+     * @param canny the edge pixels
+     * @param job the job the voting runs for, every radius is a step of it. if the job is cancelled the space holds
+     * no edge pixels and the next update votes them all
+     * @return the number of edge pixels that were voted or taken back
+     */
+    int update(EdgeList canny, Job job){
+        if(canny.width != width || canny.height != height){throw new IllegalArgumentException("the edge image does not match the space");}
+        if(edges == canny.plane){return 0;}
+        byte[] now = canny.plane.data;
+        int[] added = null, removed = new int[0];
+        if(edges != null){
+            added = indices(now, edges.data);
+            removed = indices(edges.data, now);
+            // voting the new pixels from scratch is less work than changing the old ones
+            if(added.length + removed.length > canny.size()){added = null;}
+        }
+        if(added == null){
+            if(!clean){
+                for(Slice slice : slices){
+                    job.check();
+                    if(slice != null){slice.clear();}
+                }
+                Arrays.fill(counters, 0);
+            }
+            added = indices(now, null);
+            removed = new int[0];
+        }
+        // if the voting does not finish the slices are cleared by the next update
+        edges = null;
+        clean = false;
+        vote(added, removed, job);
+        edges = canny.plane;
+        total = canny.size();
+        return added.length + removed.length;
+    }
+
+    /**
+     * @param plane an edge image
+     * @param except another edge image, or null
+     * @return the indices of the edge pixels of plane that are not edge pixels of except
+     */
+    private static int[] indices(byte[] plane, byte[] except){
+        int n = 0;
+        int[] found = new int[64];
+        for(int i = 0; i < plane.length; i++){
+            if(plane[i] != (byte) 255 || (except != null && except[i] == (byte) 255)){continue;}
+            if(n == found.length){found = Arrays.copyOf(found, 2*n);}
+            found[n++] = i;
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    private void vote(int[] added, int[] removed, Job job){
+        int radii = slices.length;
+        job.steps(radii);
+        int chunks = pool == null ? 1 : Math.min(radii, SPLIT*pool.getParallelism());
+        if(chunks <= 1){
+            vote(added, removed, 0, radii, job);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for(int c = 0; c < chunks; c++){
+            int from = (int) ((long) radii*c/chunks), to = (int) ((long) radii*(c + 1)/chunks);
+            tasks.add(ForkJoinTask.adapt(() -> vote(added, removed, from, to, job)));
+        }
+        for(ForkJoinTask<?> task : tasks){pool.execute(task);}
+        for(ForkJoinTask<?> task : tasks){task.join();}
+    }
+
+    /**
+     * vote the added pixels and take back the votes of the removed ones in the slices from - to (exclusive)
+     */
+    private void vote(int[] added, int[] removed, int from, int to, Job job){
+        for(int k = from; k < to; k++){
+            CircleStencil stencil = CircleStencil.get(minRadius + k*step, width);
+            if(slices[k] == null){slices[k] = Slice.create(kind, width*height, 0);}
+            Slice slice = slices[k];
+            int counter = counters[k];
+            for(int index : added){counter += slice.draw(stencil, index % width, index / width, height);}
+            for(int index : removed){counter -= slice.erase(stencil, index % width, index / width, height);}
+            counters[k] = counter;
+            job.step();
+        }
+    }
+
+    /**
+     * find the peaks of the space, the same as HoughTrans.peaks(..) over all the radii of the space
+     * @param tuner the tuner of the thresholds, see HoughTrans
+     * @return the peaks, in no particular order
+     */
+    List<Circle> peaks(double tuner){
+        PeakFinder finder = new PeakFinder(width, height, minRadius, maxRadius, tuner, step);
+        for(int k = 0; k < slices.length; k++){finder.visit(minRadius + k*step, slices[k], counters[k], total);}
+        return finder.finish();
+    }
+
+    /**
+     * @param accumulator receives the highest count of any radius for each cell, the same as
+     * HoughTrans.accumulator(..) over all the radii of the space
+     */
+    void maximum(IntPlane accumulator){
+        for(Slice kept : slices){kept.max(accumulator.data);}
+    }
+}
@@ -1,200 +1,316 @@
 package houghcircledetector;
 
-import javafx.scene.image.PixelWriter;
-import javafx.scene.paint.Color;
+import java.util.List;
 
 /**
- * Contains all the methods required to preform the Hough transform on edges. for each high pixel (pixel with value 255)
- * a circle is drawn around it for a range of radii (3 - maxRadius *variable defined in MainPanelController class*), this
+ * Contains all the methods required to preform the Hough transform on edges. for each edge pixel (in the EdgeList)
+ * a circle is drawn around it for a range of radii (minRadius - maxRadius of the DetectionConfig), this
  * is the transformation from normal (x,y) coordinate space, into Hough (a,b,r) coordinate space - where a, b and r are
  * the parameters in the equation of a circle r^2 = (x - a)^2 + (y - b)^2. After the transformation is done for all radii,
  * a sweep through is done and the points with high accumulations are identified, and mapped back to the normal coordinate
- * space
+ * space. none of the methods depend on JavaFX, rendering the results is left to the caller
  * @author Ntokozo Zwane
  */
 public class HoughTrans {
-    final double tuner = 1.5;
+    // the default tuner, a cell needs about 1/tuner of the points of its circle to be a detection
+    static final double TUNER = 1.5;
+    final double tuner;
+    // only every step-th radius from the smallest one on is swept
+    final int step;
+    // the job the transform runs for, each swept radius is a step of it
+    final Job job;
+    // the most accumulator cells (over all the radius slices) that are held in memory at once
+    static final int SLICE_BUDGET = 1 << 22;
+    // the edge pixels the line accumulator votes between checks of the job
+    static final int LINE_CHUNK = 1 << 14;
+    
+    public HoughTrans(){
+        this(TUNER);
+    }
+    
+    /**
+     * @param tuner the threshold of the slice of a radius is counter/(total*tuner), the higher the tuner the
+     * fewer votes a circle needs
+     */
+    HoughTrans(double tuner){
+        this(tuner, 1);
+    }
     
     /**
-     * transforms all the edges of an image into Hough Space (for a particular radius) and does a sweep through the space
-     * to find high counts of pixels
-     * @param imgObj the image object
-     * @param canny the array containing the information about the edges of the image
-     * @param accumulator the accumulated pixel values for this particular radius
+     * @param tuner the tuner of the thresholds
+     * @param step the difference between the radii that are swept, a larger step trades the accuracy of the radius
+     * (and the circles that only fit well in between the swept radii) for speed
+     */
+    HoughTrans(double tuner, int step){
+        this(tuner, step, Job.NONE);
+    }
+    
+    /**
+     * @param job the job the transform runs for, it is checked (and counts a step) after every radius is voted
+     * @see #HoughTrans(double, int)
+     */
+    HoughTrans(double tuner, int step, Job job){
+        if(step < 1){throw new IllegalArgumentException("invalid radius step " + step);}
+        this.tuner = tuner;
+        this.step = step;
+        this.job = job;
+    }
+    
+    /**
+     * @return the largest radius of minRadius - maxRadius that is swept
+     */
+    int lastRadius(int minRadius, int maxRadius){
+        return minRadius + (maxRadius - minRadius)/step*step;
+    }
+    
+    /**
+     * transforms all the edges of an image into Hough Space (for a particular radius)
+     * @param canny the edge pixels of the image
      * @param radius the radius of the current search space
-     * @param pixWriter the pixel writer object to be used to write the pixels. null if no image needs to be rendered
+     * @return the accumulated pixel values for this particular radius
      */
-    public void accumulator(ImageObject imgObj, int[][] canny, int[][] accumulator, int radius, PixelWriter pixWriter){
-        int width = imgObj.getIntWidth();
-        int height = imgObj.getIntHeight();
-        int[][] circCanny = new int[width][height];
-        
-        // hough transform all the "on" pixels
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                if(canny[x][y] == 255){transformPT(imgObj, x, y, radius, width, height, circCanny);}
-            }    
+    public IntPlane accumulator(EdgeList canny, int radius){
+        IntPlane circCanny = new IntPlane(canny.width, canny.height);
+        for(int i = 0, n = canny.size(); i < n; i++){
+            transformPT(canny.x(i), canny.y(i), radius, canny.width, canny.height, circCanny.data);
         }
-        if(pixWriter != null){
-            int max = 0;
-            for(int y = 0; y < height; y++){
-                for(int x = 0; x < width; x++){
-                    if(circCanny[x][y] > max){ max = circCanny[x][y];}
+        return circCanny;
+    }
+    
+    /**
+     * transforms all the edges of an image into Hough Space for all the radii minRadius - maxRadius and merges the
+     * accumulations into the general accumulator used for the "All Radius" accumulator (the highest count of any radius
+     * is kept). see sweep(..) for how the radii are visited
+     * @param canny the edge pixels of the image
+     * @param accumulator the accumulated pixel values over all radii
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     */
+    public void accumulator(EdgeList canny, IntPlane accumulator, int minRadius, int maxRadius){
+        accumulator(canny, accumulator.data, minRadius, maxRadius, SLICE_BUDGET);
+    }
+    
+    /**
+     * @param acc the accumulated pixel values over all radii, row by row
+     * @param budget the most accumulator cells held in memory at once
+     * @see #accumulator(EdgeList, IntPlane, int, int)
+     */
+    void accumulator(EdgeList canny, int[] acc, int minRadius, int maxRadius, int budget){
+        sweep(canny, minRadius, maxRadius, budget, (radius, slice, counter, total) -> slice.max(acc));
+    }
+    
+    /**
+     * receives the accumulated slice of each radius during a sweep
+     */
+    interface SliceVisitor {
+        /**
+         * @param radius the radius of the slice
+         * @param slice the slice, it is only valid until visit returns (its memory is reused for the next radii)
+         * @param counter the number of votes that were placed in the slice
+         * @param total the number of edge pixels that voted
+         */
+        void visit(int radius, Slice slice, int counter, int total);
+    }
+    
+    /**
+     * transform all the edge pixels into Hough Space for every step-th radius in minRadius - maxRadius. all the radii are voted
+     * from the same list of edge pixels (rather than rescanning the image for every radius). the radii are
+     * processed in blocks so that at most the memory of SLICE_BUDGET int cells is held at once, the same storage is
+     * cleared and reused for every block. the slices are held as chars, or only their cells that are voted for, when
+     * that is enough (see Slice), which fits more radii into a block. every radius is a step of the job (see Job), so
+     * a cancelled job stops after the radius being voted
+     * @param canny the edge pixels of the image
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @param visitor receives each radius' slice once its voting is done (in increasing order of radius)
+     */
+    void sweep(EdgeList canny, int minRadius, int maxRadius, SliceVisitor visitor){
+        sweep(canny, minRadius, maxRadius, SLICE_BUDGET, visitor);
+    }
+    
+    /**
+     * @param budget the most memory held at once, in int cells (at least one slice is always held)
+     * @see #sweep(EdgeList, int, int, SliceVisitor)
+     */
+    void sweep(EdgeList canny, int minRadius, int maxRadius, int budget, SliceVisitor visitor){
+        if(minRadius > maxRadius){return;}
+        int width = canny.width;
+        int height = canny.height;
+        int size = width*height;
+        int total = canny.size();
+        int radii = (maxRadius - minRadius)/step + 1;
+        // the largest circle has the most points, so it places the most votes and has the highest counts
+        int points = CircleStencil.get(lastRadius(minRadius, maxRadius), width).size();
+        long votes = (long) total*points;
+        Slice.Kind kind = Slice.kind(size, votes, points);
+        int block = (int) Math.max(1, Math.min(radii, budget*(long) Integer.BYTES/Slice.bytes(kind, size, votes)));
+        Slice[] slices = new Slice[block];
+        int[] counters = new int[block];
+        
+        for(int first = 0; first < radii; first += block){
+            int last = Math.min(radii - 1, first + block - 1);
+            // one slice at a time, so the votes of a radius stay within the same region of memory
+            for(int k = first; k <= last; k++){
+                CircleStencil stencil = CircleStencil.get(minRadius + k*step, width);
+                Slice slice = slices[k - first];
+                if(slice == null){slice = slices[k - first] = Slice.create(kind, size, votes);}
+                else{slice.clear();}
+                int counter = 0;
+                for(int i = 0; i < total; i++){
+                    counter += slice.draw(stencil, canny.x(i), canny.y(i), height);
                 }
+                counters[k - first] = counter;
+                job.step();
             }
-            for(int y = 0; y < height; y++){
-                for(int x = 0; x < width; x++){
-                    pixWriter.setColor(x, y, Color.grayRgb((int)Math.round((circCanny[x][y]/(double)max)*255)));
-                }   
-            }
-        }else{ // this implies that the "All Radius" accumulator is being used, thus simply incriment the general array
-            for(int y = 0; y < height; y++){
-                for(int x = 0; x < width; x++){
-                    if(circCanny[x][y] > accumulator[x][y]){accumulator[x][y] = circCanny[x][y];}
-                }
+            for(int k = first; k <= last; k++){
+                visitor.visit(minRadius + k*step, slices[k - first], counters[k - first], total);
             }
         }
     }
     
     /**
      * transform a particular pixel into Hough Space by drawing circles corresponding to each on pixel.
-     * the circles are drawn using Bresenham's circle drawing algorithm:
-     * http://rosettacode.org/wiki/Bitmap/Midpoint_circle_algorithm
+     * the circles are drawn using Bresenham's circle drawing algorithm (see CircleStencil), each point of the
+     * circle is counted once
      * @param centerX the position of the picture
      * @param centerY the y position of the pixel
      * @param r the current radius for which a circle will be deawn
      * @param width the width of the image
      * @param height the height of the image
-     * @param circCanny array to be accumulated for each successfully placed point
+     * @param circCanny array to be accumulated for each successfully placed point, row by row
      * @return the number of points that have been placed for this radius
      */
-    public int transformPT(ImageObject imgObj, int centerX, int centerY, int r, int width, int height, int[][] circCanny){
-        int d = (5 - r*4)/4;
-        int x = 0;
-        int y = r;
-        int counter = 0;
-        do{
-            if(imgObj.inBounds(centerX + x, centerY + y)){circCanny[centerX + x][centerY + y]++;counter++;}
-            if(imgObj.inBounds(centerX + x, centerY - y)){circCanny[centerX + x][centerY - y]++;counter++;}
-            if(imgObj.inBounds(centerX - x, centerY + y)){circCanny[centerX - x][centerY + y]++;counter++;}
-            if(imgObj.inBounds(centerX - x, centerY - y)){circCanny[centerX - x][centerY - y]++;counter++;}
-            if(imgObj.inBounds(centerX + y, centerY + x)){circCanny[centerX + y][centerY + x]++;counter++;}
-            if(imgObj.inBounds(centerX + y, centerY - x)){circCanny[centerX + y][centerY - x]++;counter++;}
-            if(imgObj.inBounds(centerX - y, centerY + x)){circCanny[centerX - y][centerY + x]++;counter++;}
-            if(imgObj.inBounds(centerX - y, centerY - x)){circCanny[centerX - y][centerY - x]++;counter++;}
-            
-            if(d < 0){d += 2 * x + 1;}
-            else{d += 2 * (x - y) + 1; y--;}
-            x++;
-        }while(x <= y);
-        return counter;
+    public int transformPT(int centerX, int centerY, int r, int width, int height, int[] circCanny){
+        return transformPT(centerX, centerY, r, width, height, circCanny, 0);
+    }
+    
+    /**
+     * transform a particular pixel into one slice of a multi-radius Hough Space
+     * @param offset the index of the first cell of the slice in circCanny
+     * @see #transformPT(int, int, int, int, int, int[])
+     */
+    int transformPT(int centerX, int centerY, int r, int width, int height, int[] circCanny, int offset){
+        return CircleStencil.get(r, width).draw(centerX, centerY, height, circCanny, offset);
     }
     
     /**
      * transform every point that is an "on" point in the edge-detected image
-     * @param imgObj the image object
-     * @param canny the array containing the information about the edges of the image
+     * @param canny the edge pixels of the image
      * @param accumulator the accumulated pixel array
      * @param radius the radius of the current search space
-     * @param pixWriter the pixel writer object to be used to write the pixels. null if no image needs to be rendered
      * @return the value of the maximum pixel, this will be used for normalizing the pixel values
      */
-    public int hough(ImageObject imgObj, int[][] canny, int[][] accumulator, int radius, PixelWriter pixWriter){
-        int width = imgObj.getIntWidth();
-        int height = imgObj.getIntHeight();
-        int[][] circCanny = new int[width][height];
-        int total = 0, counter = 0;
-        
-        // hough transform all the "on" pixels
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                if(canny[x][y] == 255){counter += transformPT(imgObj, x, y, radius, width, height, circCanny);total++;}
-            }    
-        }
-        // search through the Hough space and transform the high accumulated pixels back into normal
-        // space using them as centeres of the circles with radius @arg radius
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                if(circCanny[x][y] > Math.round(counter/((double)total*tuner))){
-                    revTransformPT(imgObj, radius, x, y, width, height, accumulator);
-                }
-            }   
-        }
-        
-        // normalize the pixel values such that they are distributed throughout the range 0-255
-        int max = 0;
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                if(accumulator[x][y] > max){ max = accumulator[x][y];}
-            }
-        }
-        if(pixWriter != null){
-            for(int y = 0; y < height; y++){
-                for(int x = 0; x < width; x++){ 
-                    pixWriter.setColor(x, y, Color.grayRgb((int)Math.round((accumulator[x][y]/(double)max)*255)));
-                }
-            }
-        }
-        return max;
+    public int hough(EdgeList canny, IntPlane accumulator, int radius){
+        return hough(canny, accumulator, radius, radius);
+    }
+    
+    /**
+     * transform every point that is an "on" point in the edge-detected image for all the radii minRadius - maxRadius,
+     * see sweep(..) for how the radii are visited
+     * @param canny the edge pixels of the image
+     * @param accumulator the accumulated pixel array
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @return the value of the maximum pixel, this will be used for normalizing the pixel values
+     */
+    public int hough(EdgeList canny, IntPlane accumulator, int minRadius, int maxRadius){
+        hough(canny, accumulator.data, minRadius, maxRadius, SLICE_BUDGET);
+        // find the maximum so that the pixel values can be distributed throughout the range 0-255
+        return accumulator.max();
+    }
+    
+    /**
+     * @param toDraw the array the detected circles are drawn into, row by row
+     * @param budget the most accumulator cells held in memory at once
+     * @see #hough(EdgeList, IntPlane, int, int)
+     */
+    void hough(EdgeList canny, int[] toDraw, int minRadius, int maxRadius, int budget){
+        int width = canny.width;
+        int height = canny.height;
+        sweep(canny, minRadius, maxRadius, budget, (radius, slice, counter, total) ->
+            reverse(radius, slice, counter, total, width, height, toDraw));
+    }
+    
+    /**
+     * find the circles in Hough Space over the range of radii minRadius - maxRadius. rather than drawing every cell that
+     * is above the threshold of its slice, only the cells that are also a peak of the (a, b, r) space are kept (see
+     * PeakFinder), and the circles that are nearly the same are merged
+     * @param canny the edge pixels of the image
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @param maxCircles the most circles to return
+     * @return the circles, highest score first
+     */
+    public List<Circle> circles(EdgeList canny, int minRadius, int maxRadius, int maxCircles){
+        return PeakFinder.rank(peaks(canny, minRadius, maxRadius, minRadius, maxRadius, SLICE_BUDGET), PeakFinder.SEPARATION, maxCircles);
+    }
+    
+    /**
+     * the peaks of the radii first - last, the radii next to them (within minRadius - maxRadius) are also swept so
+     * that the peaks of first and last are found the same way as when the whole range is swept at once. first has to
+     * be one of the swept radii of minRadius - maxRadius
+     * @param budget the most accumulator cells held in memory at once
+     * @return the peaks, in no particular order
+     */
+    List<Circle> peaks(EdgeList canny, int first, int last, int minRadius, int maxRadius, int budget){
+        return peaks(canny, first, last, minRadius, maxRadius, budget, null);
+    }
+    
+    /**
+     * @param tile the tile the edge pixels are the region of (only the peaks of its core are found), null for a
+     * whole image
+     * @see #peaks(EdgeList, int, int, int, int, int)
+     */
+    List<Circle> peaks(EdgeList canny, int first, int last, int minRadius, int maxRadius, int budget, Tile tile){
+        PeakFinder finder = new PeakFinder(canny.width, canny.height, first, last, tuner, step, tile);
+        sweep(canny, Math.max(minRadius, first - step), Math.min(maxRadius, last + step), budget, finder);
+        return finder.finish();
+    }
+    
+    /**
+     * search through the Hough space of one radius and transform the high accumulated pixels back into normal
+     * space using them as centeres of the circles with radius @arg radius
+     * @param radius the radius of the slice
+     * @param slice the slice
+     * @param counter the number of votes that were placed in the slice
+     * @param total the number of edge pixels that voted
+     * @param toDraw the array the detected circles are drawn into, row by row
+     */
+    void reverse(int radius, Slice slice, long counter, int total, int width, int height, int[] toDraw){
+        long threshold = Math.round(counter/((double)total*tuner));
+        slice.above(threshold, 0, 0, width, height, width, (index, votes) ->
+            revTransformPT(radius, index % width, index / width, width, height, toDraw));
     }
     
     /**
      * reverse transform a point in Hough Space back to normal space. this is done when there are sufficiently
-     * many points found clustered together in hough space. the circles are drawn using Bresenham's circle drawing algorithm:
-     * http://rosettacode.org/wiki/Bitmap/Midpoint_circle_algorithm
+     * many points found clustered together in hough space. the circles are drawn using Bresenham's circle drawing
+     * algorithm (see CircleStencil)
      * @param r the radius of the circle to map back to
      * @param centerX the x coordinate of image
      * @param centerY the y coordinate of the image
      * @param width the width of the image
      * @param height the height of the image
+     * @param toDraw the array the circle is drawn into, row by row
      */
-    public void revTransformPT(ImageObject imgObj, int r,int centerX, int centerY, int width, int height, int[][] toDraw){
-        int d = (5 - r*4)/4;
-        int x = 0;
-        int y = r;
-        do{
-            if(imgObj.inBounds(centerX + x, centerY + y))toDraw[centerX + x][centerY + y]++;
-            if(imgObj.inBounds(centerX + x, centerY - y))toDraw[centerX + x][centerY - y]++;
-            if(imgObj.inBounds(centerX - x, centerY + y))toDraw[centerX - x][centerY + y]++;
-            if(imgObj.inBounds(centerX - x, centerY - y))toDraw[centerX - x][centerY - y]++;
-            if(imgObj.inBounds(centerX + y, centerY + x))toDraw[centerX + y][centerY + x]++;
-            if(imgObj.inBounds(centerX + y, centerY - x))toDraw[centerX + y][centerY - x]++;
-            if(imgObj.inBounds(centerX - y, centerY + x))toDraw[centerX - y][centerY + x]++;
-            if(imgObj.inBounds(centerX - y, centerY - x))toDraw[centerX - y][centerY - x]++;
-            
-            if(d < 0){d += 2 * x + 1;}
-            else{d += 2 * (x - y) + 1; y--;}
-            x++;
-        }while(x <= y);
+    public void revTransformPT(int r,int centerX, int centerY, int width, int height, int[] toDraw){
+        CircleStencil.get(r, width).draw(centerX, centerY, height, toDraw, 0);
     }
 
-    public void houghLine(ImageObject imgObj, int[][] canny, int[][] houghLine, PixelWriter pixWriter){
-        int width = imgObj.getIntWidth();
-        int height = imgObj.getIntHeight();
-        
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                if(canny[x][y] == 255){linie(imgObj, x, y, width, height, houghLine, pixWriter);}
-            }
-        }
-        
-        // normalize the pixel values such that they are distributed throughout the range 0-255
-        int max = 0;
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                if(houghLine[x][y] > max){ max = houghLine[x][y];}
-            }
-        }
-        if(pixWriter != null){
-            for(int y = 0; y < height; y++){
-                for(int x = 0; x < width; x++){ 
-                    pixWriter.setColor(x, y, Color.grayRgb((int)Math.round((houghLine[x][y]/(double)max)*255)));
-                }
-            }
+    /**
+     * vote for the lines through the edge pixels, every LINE_CHUNK edge pixels are a step of the job
+     */
+    public void houghLine(EdgeList canny, IntPlane houghLine){
+        int n = canny.size();
+        job.steps((n + LINE_CHUNK - 1)/LINE_CHUNK);
+        for(int i = 0; i < n; i++){
+            linie(canny.x(i), canny.y(i), canny.width, canny.height, houghLine.data);
+            if((i + 1) % LINE_CHUNK == 0 || i + 1 == n){job.step();}
         }
     }
     
-    public void line(ImageObject imgObj, int x, int y, int width, int height, int[][] houghline, PixelWriter pix){
+    public void line(int x, int y, int width, int height, int[] houghline){
+        int imgWidth = width, imgHeight = height;
         width = x ;
         height = y ;
         int dx1 = 0, dy1 = 0, dx2 = 0, dy2 = 0 ;
@@ -213,7 +329,7 @@ public class HoughTrans {
         }
         int numerator = longest >> 1 ;
         for (int i=0;i<=longest;i++) {
-            if(imgObj.inBounds(x, y)){houghline[x][y]++;}
+            if(CannyEdge.inBounds(x, y, imgWidth, imgHeight)){houghline[y*imgWidth + x]++;}
             numerator += shortest ;
             if (!(numerator<longest)) {
                 numerator -= longest ;
@@ -226,7 +342,7 @@ public class HoughTrans {
         }
     }
     
-    public void linie(ImageObject imgObj, int x, int y, int width, int height, int[][] houghline, PixelWriter pix){
+    public void linie(int x, int y, int width, int height, int[] houghline){
 //        int x0 = x - 3, y0 = y - 3;
 //        int x1 = x + 3, y1 = y + 3;
         int x0 = x, y0 = y;
@@ -244,7 +360,7 @@ public class HoughTrans {
         int currentY = y0;
 
         while(true) {
-                if(imgObj.inBounds(currentX, currentY)){houghline[currentX][currentY]++;}
+                if(CannyEdge.inBounds(currentX, currentY, width, height)){houghline[currentY*width + currentX]++;}
 
                 if(currentX == x1 && currentY == y1) {
                         break;
@@ -36,7 +36,7 @@ public class ImageObject extends Image{
      */
     public int[] getAllPixels(int x, int y){
         int[] buffer = new int[WIDTH*HEIGHT];
-        this.getPixelReader().getPixels(x, y, WIDTH, HEIGHT, PixelFormat.getIntArgbPreInstance(), buffer, 0, WIDTH);
+        this.getPixelReader().getPixels(x, y, WIDTH, HEIGHT, PixelFormat.getIntArgbInstance(), buffer, 0, WIDTH);
         return buffer;
     }
     
@@ -0,0 +1,91 @@
+package houghcircledetector;
+
+/**
+ * a single channel image held in one flat array, row by row (row-major). the pixel at (x,y) is found at
+ * index y*stride + x, so walking along a row walks through consecutive memory. the pipeline stages read
+ * and write the backing arrays of the subclasses directly, the accessors here are for the less performance
+ * critical code (rendering, writing the results out)
+ * @author Ntokozo Zwane
+ */
+public abstract class ImagePlane {
+    
+    protected final int width, height, stride;
+    
+    /**
+     * @param width the width of the image
+     * @param height the height of the image
+     */
+    protected ImagePlane(int width, int height){
+        if(width <= 0 || height <= 0){throw new IllegalArgumentException("invalid image size " + width + "x" + height);}
+        this.width = width;
+        this.height = height;
+        this.stride = width;
+    }
+    
+    /**
+     * @return the width of the image
+     */
+    public int getWidth(){
+        return width;
+    }
+    
+    /**
+     * @return the height of the image
+     */
+    public int getHeight(){
+        return height;
+    }
+    
+    /**
+     * @return the distance (in array elements) between the start of two consecutive rows
+     */
+    public int getStride(){
+        return stride;
+    }
+    
+    /**
+     * @param x the x coordinate of the pixel
+     * @param y the y coordinate of the pixel
+     * @return the position of the pixel in the backing array
+     */
+    public int index(int x, int y){
+        return y*stride + x;
+    }
+    
+    /**
+     * checks whether a given point is within the bounds of this image
+     * @param x x position
+     * @param y y position 
+     * @return true if the point is within the bounds
+     */
+    public boolean inBounds(int x, int y){
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+    
+    /**
+     * @param index the position of the pixel in the backing array
+     * @return the value of the pixel
+     */
+    public abstract int get(int index);
+    
+    /**
+     * @param x the x coordinate of the pixel
+     * @param y the y coordinate of the pixel
+     * @return the value of the pixel
+     */
+    public int get(int x, int y){
+        return get(index(x, y));
+    }
+    
+    /**
+     * @return the largest value in the image, used for normalizing the pixel values to the range 0-255
+     */
+    public int max(){
+        int max = 0;
+        for(int i = 0, n = width*height; i < n; i++){
+            int value = get(i);
+            if(value > max){max = value;}
+        }
+        return max;
+    }
+}
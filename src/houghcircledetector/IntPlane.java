@@ -0,0 +1,24 @@
+package houghcircledetector;
+
+/**
+ * an image plane of 32 bit values, used for the Hough accumulators
+ * @author Ntokozo Zwane
+ */
+public final class IntPlane extends ImagePlane {
+    
+    public final int[] data;
+    
+    public IntPlane(int width, int height){
+        super(width, height);
+        data = new int[width*height];
+    }
+    
+    @Override
+    public int get(int index){
+        return data[index];
+    }
+    
+    public void set(int x, int y, int value){
+        data[index(x, y)] = value;
+    }
+}
@@ -0,0 +1,91 @@
+package houghcircledetector;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the handle of one detection job, shared by all the stages that run for it. the job can be cancelled from any
+ * thread: the stages check it between the rows of the image (Canny) and between the radii (Hough transform) and stop
+ * with a CancellationException, so a cancelled job stops within about one row or one radius and leaves no result
+ * behind. the stages also report the stage that is running, and how many of its radii the Hough transform has done,
+ * to a Listener. nothing in here depends on JavaFX
+ * @author Ntokozo Zwane
+ */
+public final class Job {
+    // the job of the calls that are not run as a job, it is never cancelled and reports to no one
+    static final Job NONE = new Job(null);
+
+    /**
+     * receives the progress of a job, on the threads that run the job
+     */
+    public interface Listener {
+        /**
+         * @param stage the name of the running stage
+         * @param done the fraction of the stage that is done (0-1), -1 if it is not known
+         */
+        void progress(String stage, double done);
+    }
+
+    private final Listener listener;
+    private volatile boolean cancelled;
+    // the running stage, and the steps of it that are done out of steps
+    private volatile String stage = "";
+    private volatile int steps;
+    private final AtomicInteger done = new AtomicInteger();
+
+    /**
+     * @param listener receives the progress of the job, null if it is not needed
+     */
+    public Job(Listener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * ask the stages running for this job to stop, they throw a CancellationException
+     */
+    public void cancel(){
+        if(this != NONE){cancelled = true;}
+    }
+
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    /**
+     * @throws CancellationException if the job has been cancelled
+     */
+    void check(){
+        if(cancelled){throw new CancellationException("the job was cancelled");}
+    }
+
+    /**
+     * start a stage whose progress is not known
+     * @param name the name of the stage
+     */
+    void stage(String name){
+        check();
+        stage = name;
+        steps = 0;
+        if(listener != null){listener.progress(name, -1);}
+    }
+
+    /**
+     * say how many steps the running stage takes, the steps are counted by step()
+     * @param steps the number of steps
+     */
+    void steps(int steps){
+        done.set(0);
+        this.steps = steps;
+        if(listener != null){listener.progress(stage, 0);}
+    }
+
+    /**
+     * count one step of the running stage as done
+     * @throws CancellationException if the job has been cancelled
+     */
+    void step(){
+        check();
+        int count = done.incrementAndGet();
+        if(listener != null && steps > 0){listener.progress(stage, Math.min(1.0, count/(double) steps));}
+    }
+}
@@ -0,0 +1,44 @@
+package houghcircledetector;
+
+/**
+ * the weights of the red, green and blue channels used for turning a pixel grey. the weights are integers over a
+ * divisor, grey = (wr*r + wg*g + wb*b + divisor/2)/divisor, and the division is done as a multiplication and a shift
+ * that gives exactly the same result for every pixel, so no floating point or integer division is done per pixel
+ * @author Ntokozo Zwane
+ */
+public enum Luma {
+    // the weights of javafx.scene.paint.Color.grayscale()
+    FX(21, 71, 7, 100),
+    // ITU-R BT.601, as used by most image libraries
+    REC601(299, 587, 114, 1000),
+    // ITU-R BT.709, the weights of the sRGB primaries
+    REC709(2126, 7152, 722, 10000),
+    // the mean of the three channels
+    AVERAGE(1, 1, 1, 3);
+
+    // the largest weighted sum is below 2^SUM_BITS for every preset
+    private static final int SUM_BITS = 22;
+
+    public final int red, green, blue, divisor;
+    // sum/divisor == (sum*multiplier) >>> shift for every sum below 2^SUM_BITS
+    private final long multiplier;
+    private final int shift;
+
+    Luma(int red, int green, int blue, int divisor){
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.divisor = divisor;
+        this.shift = SUM_BITS + 32 - Integer.numberOfLeadingZeros(divisor - 1);
+        this.multiplier = ((1L << shift) + divisor - 1)/divisor;
+    }
+
+    /**
+     * @param argb a pixel in argb form, the alpha is ignored
+     * @return the grey value (0-255) of the pixel
+     */
+    public int grey(int argb){
+        int sum = red*((argb >> 16) & 0xFF) + green*((argb >> 8) & 0xFF) + blue*(argb & 0xFF) + (divisor >> 1);
+        return (int) ((sum*multiplier) >>> shift);
+    }
+}
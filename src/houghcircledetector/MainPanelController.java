@@ -8,7 +8,14 @@ package houghcircledetector;
 import java.awt.image.RenderedImage;
 import java.io.File;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javafx.concurrent.Task;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
@@ -19,12 +26,13 @@ import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.ColorPicker;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.image.PixelFormat;
-import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.VBoxBuilder;
 import javafx.scene.paint.Color;
@@ -59,17 +67,46 @@ public class MainPanelController implements Initializable {
     @FXML
     private RadioButton radio_radius;
     @FXML
+    private RadioButton radio_gradient;
+    @FXML
     private ColorPicker color_write;
+    @FXML
+    private ProgressBar progress_job;
+    @FXML
+    private Label label_job;
     
     private ImageObject img_in_obj;
     
     private ImageObject img_pr_obj;
     
-    private final CannyEdge cannyE = new CannyEdge();
+    private final CircleDetector detector = new CircleDetector();
+    
+    // the stage results of the image being processed, kept between the button clicks
+    private final Pipeline pipeline = new Pipeline(detector);
+    
+    // the output view shows stage results rendered at up to PREVIEW_SCALE times its size, larger ones are shrunk
+    private static final int PREVIEW_SCALE = 2;
     
-    private final HoughTrans houghT = new HoughTrans();
+    // the grey values of a rendered plane are pushed into the image one byte per pixel through a grey palette
+    private static final PixelFormat<ByteBuffer> GREY = PixelFormat.createByteIndexedInstance(PlaneRenderer.greyPalette());
     
-    int maxRadius; // tha maximum possible radius of a circle in thie image minimum(image_width, image_height)/2
+    // the plane on display in the output view (null if it is not a plane), kept so that it can be written out at
+    // full size when the view only shows a shrunk preview of it
+    private ImagePlane shown;
+    private boolean shownNormalized;
+    
+    // the parameters the buttons run with, replaced (never changed) by the increment/decrement buttons
+    private DetectionConfig config = DetectionConfig.DEFAULT;
+    
+    // the detection jobs are run one at a time on a background thread, so the interface stays responsive
+    private final ExecutorService jobs = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "detection");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // the job that is running (or waiting to run), null if there is none
+    private DetectionTask<?> running;
     
     /**
      * initialize the file chooser. this is the interface that allows the user to select a file (an image) from any 
@@ -85,143 +122,183 @@ public class MainPanelController implements Initializable {
     }
     
     /**
-     * handle all the button events
+     * handle all the button events. the stages are run as a background job (see submit), the other buttons act
+     * straight away
      * @param event
      */
     @FXML
     private void handleButtonAction(ActionEvent event) {
         String buttonCliced = ((Button) event.getSource()).getText();
+        // the job runs with the parameters of the click, whatever is changed while it runs
+        DetectionConfig config = this.config;
         switch(buttonCliced){
             case "Open Image":
                 File in_file = initFileChooser( );
+                cancel();
                 img_in_obj = new ImageObject(in_file.toURI().toString());
                 img_pr_obj = new ImageObject(in_file.toURI().toString());
                 img_in.setImage(new Image(in_file.toURI().toString()));
-                maxRadius = Math.min(img_pr_obj.getIntWidth(), img_pr_obj.getIntHeight())/2;
+                setImage();
                 break;
             case "Reset":{
+                cancel();
                 img_pr_obj = img_in_obj;
                 img_out.setImage(img_in_obj);
+                setImage();
+                shown = null;
+                break;}
+            case "Cancel":{
+                cancel();
                 break;}
             case "Smooth":{
-                WritableImage dest = new WritableImage(img_pr_obj.getIntWidth( ),img_pr_obj.getIntHeight( ));   
-                PixelWriter pixWriter = dest.getPixelWriter();
-                int[] greyscaled = cannyE.grayscale(img_pr_obj, null);
-                int[][] greyBuffer = new int[img_pr_obj.getIntWidth()][img_pr_obj.getIntHeight()];
-                int index = 0;
-                for(int y = 0; y < img_pr_obj.getIntHeight( ); y++){
-                    for(int x = 0; x < img_pr_obj.getIntWidth( ); x++){
-                        greyBuffer[x][y] = greyscaled[index];
-                        index ++;
-                    }
-                }
-                smooth(pixWriter);
-                img_out.setImage(dest);
+                submit(job -> pipeline.smoothed(config, job), plane -> show(plane, false));
                 break;}
             case "Grayscale":{
-                cannyE.grayscale(img_pr_obj, img_out);}
+                submit(job -> pipeline.grey(config, job), plane -> show(plane, false));}
                 break;
             case "CannyEdge":{
-                WritableImage dest = new WritableImage(img_pr_obj.getIntWidth( ),img_pr_obj.getIntHeight( ));   
-                PixelWriter pixWriter = dest.getPixelWriter();
-                
-                cannyEdge(pixWriter);
-                img_out.setImage(dest);
+                submit(job -> pipeline.edges(config, job).plane, plane -> show(plane, false));
                 break;}
             case "Accumulator":{
-                WritableImage dest = new WritableImage(img_pr_obj.getIntWidth( ),img_pr_obj.getIntHeight( ));   
-                PixelWriter pixWriter = dest.getPixelWriter();
-                int[][] canny = cannyEdge(null);
                 if(radio_radius.isSelected()){
-                    int[][] accumulator = new int[img_pr_obj.getIntWidth()][img_pr_obj.getIntHeight()];
-                    
-                    for(int r = 3; r <= maxRadius; r++){
-                        houghT.accumulator(img_pr_obj, canny, accumulator, r, null);
-                    }
-                    int max = 0;
-                    for(int y = 0; y < img_pr_obj.getIntHeight( ); y++){
-                        for(int x = 0; x < img_pr_obj.getIntWidth( ); x++){
-                            if(accumulator[x][y] > max){ max = accumulator[x][y];}
-                        }
-                    }
-                    for(int y = 0; y < img_pr_obj.getIntHeight( ); y++){
-                        for(int x = 0; x < img_pr_obj.getIntWidth( ); x++){
-                            pixWriter.setColor(x, y, Color.grayRgb((int)Math.round((accumulator[x][y]/(double)max)*255)));
-                        }
-                    }
-                }else{houghT.accumulator(img_pr_obj, canny, new int[img_pr_obj.getIntWidth()][img_pr_obj.getIntHeight()], Integer.parseInt(text_radius.getText()), pixWriter);}
-                img_out.setImage(dest);
+                    submit(job -> pipeline.accumulator(config, job), plane -> show(plane, true));
+                }else{
+                    int radius = Integer.parseInt(text_radius.getText());
+                    submit(job -> pipeline.accumulator(config, radius, job), plane -> show(plane, true));
+                }
                 break;}
             case "Sobel":{
-                WritableImage dest = new WritableImage(img_pr_obj.getIntWidth( ),img_pr_obj.getIntHeight( ));   
-                PixelWriter pixWriter = dest.getPixelWriter();
-                int[][] newBuffer = smooth(null);
-                int[][] CannyXSobel = cannyE.sobelXOperator(img_pr_obj, newBuffer);
-                int[][] CannyYSobel = cannyE.sobelYOperator(img_pr_obj, newBuffer);
-                int[][] CannySobel = cannyE.combineSobel(img_pr_obj, CannyXSobel, CannyYSobel);
-                for(int y = 0; y < img_pr_obj.getIntHeight( ); y++){
-                    for(int x = 0; x < img_pr_obj.getIntWidth( ); x++){
-                        pixWriter.setColor(x, y, Color.grayRgb(CannyEdge.clamp(CannySobel[x][y])));
-                    }
-                }
-                img_out.setImage(dest);
+                // the magnitudes are clamped to 0-255 for display
+                submit(job -> pipeline.gradient(config, job).magnitude, plane -> show(plane, false));
                 break;}
             case "Hough":{
-                WritableImage dest = new WritableImage(img_pr_obj.getIntWidth( ),img_pr_obj.getIntHeight( ));   
-                PixelWriter pixWriter = dest.getPixelWriter();
-                int[][] canny = cannyEdge(null);
-                int[][] toDraw = new int[img_pr_obj.getIntWidth()][img_pr_obj.getIntHeight()];
-                
-                for(int r = 3; r <= maxRadius; r++){
-                    houghT.hough(img_pr_obj, canny, toDraw, r, pixWriter);
-                }
-                img_out.setImage(dest);
+                boolean gradient = radio_gradient.isSelected();
+                int width = width(), height = height();
+                submit(job -> CircleDetector.draw(circles(config, gradient, job), width, height), plane -> show(plane, true));
                 break;}
             case "Write":{
                 if(radio_write.isSelected()){
-                    WritableImage dest = new WritableImage(img_pr_obj.getIntWidth( ),img_pr_obj.getIntHeight( ));   
-                    PixelWriter pixWriter = dest.getPixelWriter();
-                    int[][] canny = cannyEdge(null);
-                    int max = 0;
-                    int[][] toDraw = new int[img_pr_obj.getIntWidth()][img_pr_obj.getIntHeight()];
-
-                    // preform the hough circle detection to detect the circles
-                    for(int r = 3; r <= maxRadius; r++){
-                        max = houghT.hough(img_pr_obj, canny, toDraw, r, null);
-                    }
-
-                    // copy the pixels from the original image
-                    int[] buffer = img_pr_obj.getAllPixels(0, 0);
-                    pixWriter.setPixels(0, 0,img_pr_obj.getIntWidth( ),img_pr_obj.getIntHeight( ), PixelFormat.getIntArgbInstance(), buffer, 0,img_pr_obj.getIntWidth( ));
-
-                    // write the circles over this image
-                    for(int y = 0; y < img_pr_obj.getIntHeight( ); y++){
-                        for(int x = 0; x < img_pr_obj.getIntWidth( ); x++){
-                            if((int)Math.round((toDraw[x][y]/(double)max)*255) > 0){
-                                pixWriter.setColor(x, y, color_write.getValue());
-                            }
-                        }
-                    }
-                    img_out.setImage(dest);
-                }
-                
-                // write the image to file
-                writeImageToFile(img_out);
+                    boolean gradient = radio_gradient.isSelected();
+                    int width = width(), height = height();
+                    int colour = argb(color_write.getValue());
+                    int[] buffer = pixels();
+                    submit(job -> {
+                        // preform the hough circle detection and write the circles over the original image
+                        PlaneRenderer.overlay(buffer, CircleDetector.draw(circles(config, gradient, job), width, height), colour);
+                        return buffer;
+                    }, drawn -> {
+                        WritableImage dest = new WritableImage(width, height);
+                        dest.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), drawn, 0, width);
+                        img_out.setImage(dest);
+                        shown = null;
+                        // write the image to file
+                        writeImageToFile(img_out);
+                    });
+                }else{writeImageToFile(img_out);}
                 break;
             }
             case "HoughLine":{
-                WritableImage dest = new WritableImage(img_pr_obj.getIntWidth( ),img_pr_obj.getIntHeight( ));   
-                PixelWriter pixWriter = dest.getPixelWriter();
-                int[][] canny = cannyEdge(null);
-                int[][] toDraw = new int[img_pr_obj.getIntWidth()][img_pr_obj.getIntHeight()];
-                
-                houghT.houghLine(img_pr_obj, canny, toDraw, pixWriter);
-                img_out.setImage(dest);
+                submit(job -> pipeline.houghLine(config, job), plane -> show(plane, true));
                 break;
             }
         }
     }
     
+    /**
+     * preform the hough circle detection over all radii in the image, with the gradient directed transform if it
+     * is selected. the stages that the last detection has already run with the same parameters are not run again
+     * @param gradient true for the gradient directed transform
+     * @param job the job the detection runs for
+     * @return the circles
+     */
+    private List<Circle> circles(DetectionConfig config, boolean gradient, Job job){
+        return gradient ? pipeline.directed(config, job) : pipeline.circles(config, job);
+    }
+    
+    /**
+     * a detection job run by a javafx Task. the stages report their progress to the job, which passes it on to the
+     * progress and message of the task, and cancelling the task cancels the job (see Job)
+     */
+    private static final class DetectionTask<T> extends Task<T> {
+        private final Job job = new Job(this::report);
+        private final Function<Job, T> compute;
+        
+        DetectionTask(Function<Job, T> compute){
+            this.compute = compute;
+        }
+        
+        private void report(String stage, double done){
+            updateMessage(stage);
+            updateProgress(done, 1);
+        }
+        
+        @Override
+        protected T call(){
+            return compute.apply(job);
+        }
+        
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning){
+            job.cancel();
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+    
+    /**
+     * run a job in the background, the job that is running is cancelled first. its progress is shown under the
+     * buttons while it runs
+     * @param compute computes the result, on the background thread
+     * @param done receives the result on the javafx thread, it is not called if the job is cancelled
+     */
+    private <T> void submit(Function<Job, T> compute, Consumer<T> done){
+        cancel();
+        DetectionTask<T> task = new DetectionTask<>(compute);
+        running = task;
+        progress_job.progressProperty().bind(task.progressProperty());
+        label_job.textProperty().bind(task.messageProperty());
+        task.setOnSucceeded(e -> {
+            if(running != task){return;}
+            finish();
+            done.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            if(running != task){return;}
+            finish();
+            handleError(0, "Detection failed: " + task.getException().getMessage());
+        });
+        jobs.submit(task);
+    }
+    
+    /**
+     * set the image of the pipeline on the thread of the jobs rather than waiting here for the cancelled job to let
+     * go of the pipeline. the jobs run in order, so the ones submitted after run on the new image
+     */
+    private void setImage(){
+        int[] argb = pixels();
+        int width = width(), height = height();
+        jobs.submit(() -> pipeline.setImage(argb, width, height));
+    }
+
+    /**
+     * cancel the job that is running, if there is one
+     */
+    private void cancel(){
+        if(running == null){return;}
+        running.cancel();
+        finish();
+    }
+    
+    /**
+     * clear the progress of the job that has finished (or has been cancelled)
+     */
+    private void finish(){
+        running = null;
+        progress_job.progressProperty().unbind();
+        progress_job.setProgress(0);
+        label_job.textProperty().unbind();
+        label_job.setText("");
+    }
+    
     /**
      * handle a radio button toggle
      * @param event 
@@ -248,56 +325,54 @@ public class MainPanelController implements Initializable {
     }
     
     /**
-     * handle the increment/decrement buttons for the parameters. each value is checked
-     * if it is in bounds before incrementing
+     * handle the increment/decrement buttons for the parameters. a parameter is only changed if the
+     * configuration with the new value is valid (see DetectionConfig)
      */
     @FXML
     private void incFilter(){
-        if(outOfBounds(CannyEdge.KERNEL_SIZE + 2,1,21)) return;
-        CannyEdge.KERNEL_SIZE += 2;
-        text_filter.setText(CannyEdge.KERNEL_SIZE + "");
+        update(config.toBuilder().kernelSize(config.kernelSize + 2));
     }
     @FXML
     private void decFilter(){
-        if(outOfBounds(CannyEdge.KERNEL_SIZE - 2,1,21)) return;
-        CannyEdge.KERNEL_SIZE -= 2;
-        text_filter.setText(CannyEdge.KERNEL_SIZE + "");
+        update(config.toBuilder().kernelSize(config.kernelSize - 2));
     }
     @FXML
     private void incSigma(){
-        if(outOfBounds(CannyEdge.SIGMA + 0.1, 0.0, 10)) return;
-        CannyEdge.SIGMA += 0.1;
-        text_sigma.setText(CannyEdge.SIGMA + "");
+        update(config.toBuilder().sigma(config.sigma + 0.1));
     }
     @FXML
     private void decSigma(){
-        if(outOfBounds(CannyEdge.SIGMA - 0.1, 0.0, 10)) return;
-        CannyEdge.SIGMA -= 0.1;
-        text_sigma.setText(CannyEdge.SIGMA + "");
+        update(config.toBuilder().sigma(config.sigma - 0.1));
     }
     @FXML
     private void incHThresh(){
-        if(outOfBounds(CannyEdge.THRESHOLD_HIGH + 10, 0, 255)) return;
-        CannyEdge.THRESHOLD_HIGH += 10;
-        text_high_thresh.setText(CannyEdge.THRESHOLD_HIGH + "");
+        update(config.toBuilder().highThreshold(config.highThreshold + 10));
     }
     @FXML
     private void decHThresh(){
-        if(outOfBounds(CannyEdge.THRESHOLD_HIGH - 10, 0, 255)) return;
-        CannyEdge.THRESHOLD_HIGH -= 10;
-        text_high_thresh.setText(CannyEdge.THRESHOLD_HIGH + "");
+        update(config.toBuilder().highThreshold(config.highThreshold - 10));
     }
     @FXML
     private void incLThresh(){
-        if(outOfBounds(CannyEdge.THRESHOLD_LOW + 10, 0, 255)) return;
-        CannyEdge.THRESHOLD_LOW += 10;
-        text_low_thresh.setText(CannyEdge.THRESHOLD_LOW + "");
+        update(config.toBuilder().lowThreshold(config.lowThreshold + 10));
     }
     @FXML
     private void decLThresh(){
-if(outOfBounds(CannyEdge.THRESHOLD_LOW - 10, 0, 255)) return;
-        CannyEdge.THRESHOLD_LOW -= 10;
-        text_low_thresh.setText(CannyEdge.THRESHOLD_LOW + "");
+        update(config.toBuilder().lowThreshold(config.lowThreshold - 10));
+    }
+    
+    /**
+     * replace the configuration and show its values, nothing is changed if the new values are out of bounds
+     * @param builder the new values
+     */
+    private void update(DetectionConfig.Builder builder){
+        try{
+            config = builder.build();
+        }catch(IllegalArgumentException e){return;}
+        text_filter.setText(config.kernelSize + "");
+        text_sigma.setText(config.sigma + "");
+        text_high_thresh.setText(config.highThreshold + "");
+        text_low_thresh.setText(config.lowThreshold + "");
     }
     
     /**
@@ -307,10 +382,7 @@ if(outOfBounds(CannyEdge.THRESHOLD_LOW - 10, 0, 255)) return;
      */
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        text_filter.setText(CannyEdge.KERNEL_SIZE+"");
-        text_sigma.setText(CannyEdge.SIGMA+"");
-        text_high_thresh.setText(CannyEdge.THRESHOLD_HIGH+"");
-        text_low_thresh.setText(CannyEdge.THRESHOLD_LOW+"");
+        update(config.toBuilder());
         color_write.setValue(Color.RED);
         color_write.setVisible(false); // only show this on radio_write selected
     } 
@@ -348,52 +420,71 @@ if(outOfBounds(CannyEdge.THRESHOLD_LOW - 10, 0, 255)) return;
     }
     
     
-   /**
-    * smooth the edges of the image by applying a Gaussian filter to it using the provided parameters
-    * @param pixWriter the pixel writer object to be used to write the pixels. null if no image needs to be rendered
-    * @return the array containing the smoothed pixels
-    */
-    public int[][] smooth(PixelWriter pixWriter){
-        int[] greyscaled = cannyE.grayscale(img_pr_obj, null);
-        int[][] greyBuffer = new int[img_pr_obj.getIntWidth()][img_pr_obj.getIntHeight()];
-        int index = 0;
-        for(int y = 0; y < img_pr_obj.getIntHeight( ); y++){
-            for(int x = 0; x < img_pr_obj.getIntWidth( ); x++){
-                greyBuffer[x][y] = greyscaled[index];
-                index ++;
-            }
-        }
-        return cannyE.filter(greyBuffer, img_pr_obj, pixWriter);        
+    /**
+     * @return the pixels of the image currently being processed in argb form, row by row
+     */
+    private int[] pixels(){
+        return img_pr_obj.getAllPixels(0, 0);
+    }
+    
+    private int width(){
+        return img_pr_obj.getIntWidth();
+    }
+    
+    private int height(){
+        return img_pr_obj.getIntHeight();
+    }
+    
+    /**
+     * show an image plane in the output view, shrunk to about the size of the view if it is much larger
+     * @param values the grey values
+     * @param normalize true if the values should be distributed throughout the range 0-255, otherwise
+     * they are clamped to that range
+     */
+    private void show(ImagePlane values, boolean normalize){
+        int factor = PlaneRenderer.factor(values.getWidth(), values.getHeight(),
+                (int) (PREVIEW_SCALE*img_out.getFitWidth()), (int) (PREVIEW_SCALE*img_out.getFitHeight()));
+        img_out.setImage(render(values, normalize, factor));
+        shown = values;
+        shownNormalized = normalize;
     }
     
     /**
-     * use Canny Edge Detection algorithm to detect edges in an image
-     * @param pixWriter the pixel writer object to be used to write the pixels. null if no image needs to be rendered
-     * @return the array containing the edge detected pixels
+     * render an image plane (as returned by the detection engine) to an image
+     * @param values the grey values
+     * @param normalize true if the values should be distributed throughout the range 0-255, otherwise
+     * they are clamped to that range
+     * @return the rendered image
      */
-    public int[][] cannyEdge(PixelWriter pixWriter){
-        int[][] newBuffer = smooth(null);
-        int[][] CannyXSobel = cannyE.sobelXOperator(img_pr_obj, newBuffer);
-        int[][] CannyYSobel = cannyE.sobelYOperator(img_pr_obj, newBuffer);
-        int[][] CannySobel = cannyE.combineSobel(img_pr_obj, CannyXSobel, CannyYSobel);
-        int[][] nonmax = cannyE.nonMaximSupression(img_pr_obj, CannyXSobel, CannyYSobel, CannySobel, pixWriter);
-        return cannyE.hysteresis(img_pr_obj, nonmax, pixWriter);
+    public WritableImage render(ImagePlane values, boolean normalize){
+        return render(values, normalize, 1);
     }
     
+    /**
+     * render an image plane to an image, the grey values are computed in one pass (see PlaneRenderer) and written
+     * with a single setPixels call
+     * @param factor the plane is shrunk by this factor
+     * @see #render(ImagePlane, boolean)
+     */
+    public WritableImage render(ImagePlane values, boolean normalize, int factor){
+        BytePlane grey = PlaneRenderer.grey(values, normalize, factor);
+        int width = grey.getWidth();
+        int height = grey.getHeight();
+        WritableImage dest = new WritableImage(width, height);
+        dest.getPixelWriter().setPixels(0, 0, width, height, GREY, grey.data, 0, width);
+        return dest;
+    }
     
-   /**
-    * check whether the attempt to change a parameter is within bounds
-    * @param num the potential value of the parameter
-    * @param min the minimum value the parameter can possess
-    * @param max the maximum value the parameter can possess
-    * @return true if the potential value of the parameter is out of bounds
-    */
-    public boolean outOfBounds(double num, double min, double max){
-        if(num < min) return true;
-        if(num > max) return true;
-        return false;
+    /**
+     * @param color a colour
+     * @return the colour in argb form
+     */
+    private static int argb(Color color){
+        return (int) Math.round(color.getOpacity()*255) << 24 | (int) Math.round(color.getRed()*255) << 16 |
+                (int) Math.round(color.getGreen()*255) << 8 | (int) Math.round(color.getBlue()*255);
     }
     
+    
     /**
      * writes the currently displayed image to a .png file. checks are done to avoid overwriting
      * an image with a new one. the image names are saved incrementally
@@ -401,7 +492,9 @@ if(outOfBounds(CannyEdge.THRESHOLD_LOW - 10, 0, 255)) return;
      */
     public void writeImageToFile(ImageView imageView){
         try{
-            RenderedImage renderedImage = SwingFXUtils.fromFXImage(imageView.getImage(), null);
+            // a shrunk preview is rendered again at full size
+            Image image = shown != null && imageView == img_out ? render(shown, shownNormalized) : imageView.getImage();
+            RenderedImage renderedImage = SwingFXUtils.fromFXImage(image, null);
             File file = new File("output.png");;
             // ensure that an existing file is not being overwritten
             int fileCount = 1;
@@ -0,0 +1,404 @@
+package houghcircledetector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * runs the multi-radius Hough transform of HoughTrans on a ForkJoin pool. the radius range is split into sub-ranges of
+ * about equal cost (the cost of a radius grows with the number of points on its circle), and each sub-range is swept
+ * serially by its own task into its own scratch arrays. the results of the tasks are merged with operations that do not
+ * depend on the order they are applied in (the drawn circles are added, the accumulators take the maximum), so the
+ * output is exactly the same as the serial one for any parallelism.
+ * a single radius is split the other way: the edge pixels are split into chunks that each vote into a private partial
+ * accumulator, and the partials are summed in parallel over ranges of cells
+ * @author Ntokozo Zwane
+ */
+public class ParallelHough {
+    // each task gets roughly 1/(SPLIT*parallelism) of the total cost, so that the work can be balanced
+    static final int SPLIT = 4;
+    // the fewest edge pixels worth voting on a thread of their own
+    static final int MIN_CHUNK = 512;
+    // the most cells held in the partial accumulators of a single radius at once
+    static final int PARTIAL_BUDGET = 1 << 24;
+    // the edge pixels a single radius votes for between checks of the job
+    static final int CHECK = 1 << 12;
+
+    private final ForkJoinPool pool;
+    // true if the pool was created here (and so has to be shut down here)
+    private final boolean ownsPool;
+
+    private final HoughTrans houghT;
+
+    /**
+     * @param parallelism the number of threads to use
+     */
+    public ParallelHough(int parallelism){
+        this.pool = new ForkJoinPool(parallelism);
+        this.ownsPool = true;
+        this.houghT = new HoughTrans();
+    }
+
+    /**
+     * @param pool the pool the tasks are run on
+     */
+    public ParallelHough(ForkJoinPool pool){
+        this(pool, HoughTrans.TUNER);
+    }
+
+    /**
+     * @param pool the pool the tasks are run on
+     * @param tuner the tuner of the thresholds, see HoughTrans
+     */
+    ParallelHough(ForkJoinPool pool, double tuner){
+        this(pool, tuner, 1);
+    }
+
+    /**
+     * @param pool the pool the tasks are run on
+     * @param tuner the tuner of the thresholds, see HoughTrans
+     * @param step the difference between the radii that are swept, see HoughTrans
+     */
+    ParallelHough(ForkJoinPool pool, double tuner, int step){
+        this(pool, tuner, step, Job.NONE);
+    }
+
+    /**
+     * @param job the job the transform runs for, every swept radius is a step of it
+     * @see #ParallelHough(ForkJoinPool, double, int)
+     */
+    ParallelHough(ForkJoinPool pool, double tuner, int step, Job job){
+        this.pool = pool;
+        this.ownsPool = false;
+        this.houghT = new HoughTrans(tuner, step, job);
+    }
+
+    /**
+     * @return the number of threads used
+     */
+    public int getParallelism(){
+        return pool.getParallelism();
+    }
+
+    /**
+     * release the threads of the pool, if it was created by this executor
+     */
+    public void shutdown(){
+        if(ownsPool){pool.shutdown();}
+    }
+
+    /**
+     * preform the Hough circle detection over the range of radii minRadius - maxRadius, the same as
+     * HoughTrans.hough(canny, accumulator, minRadius, maxRadius)
+     * @param canny the edge pixels of the image
+     * @param toDraw the array the detected circles are drawn into
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @return the value of the maximum pixel, this will be used for normalizing the pixel values
+     */
+    public int hough(EdgeList canny, IntPlane toDraw, int minRadius, int maxRadius){
+        run(canny, toDraw.data, minRadius, maxRadius, false);
+        return toDraw.max();
+    }
+
+    /**
+     * the Hough accumulator over all radii in the range minRadius - maxRadius, the same as
+     * HoughTrans.accumulator(canny, accumulator, minRadius, maxRadius)
+     * @param canny the edge pixels of the image
+     * @param accumulator the accumulated pixel values over all radii
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     */
+    public void accumulator(EdgeList canny, IntPlane accumulator, int minRadius, int maxRadius){
+        run(canny, accumulator.data, minRadius, maxRadius, true);
+    }
+
+    /**
+     * find the circles over the range of radii minRadius - maxRadius, the same as
+     * HoughTrans.circles(canny, minRadius, maxRadius, maxCircles). each task finds the peaks of its own radii
+     * @param canny the edge pixels of the image
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @param maxCircles the most circles to return
+     * @return the circles, highest score first
+     */
+    public List<Circle> circles(EdgeList canny, int minRadius, int maxRadius, int maxCircles){
+        return PeakFinder.rank(peaks(canny, minRadius, maxRadius, null), PeakFinder.SEPARATION, maxCircles);
+    }
+
+    /**
+     * the peaks over the range of radii minRadius - maxRadius, the same as HoughTrans.peaks(..) over the whole range
+     * @param canny the edge pixels of the image, or of the region of a tile
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @param tile the tile the edge pixels are the region of (only the peaks of its core are found), null for a
+     * whole image
+     * @return the peaks, in no particular order
+     */
+    List<Circle> peaks(EdgeList canny, int minRadius, int maxRadius, Tile tile){
+        if(minRadius > maxRadius){return new ArrayList<>();}
+        maxRadius = houghT.lastRadius(minRadius, maxRadius);
+        houghT.job.steps((maxRadius - minRadius)/houghT.step + 1);
+        int parallelism = getParallelism();
+        if(parallelism == 1 || minRadius == maxRadius){return houghT.peaks(canny, minRadius, maxRadius, minRadius, maxRadius, HoughTrans.SLICE_BUDGET, tile);}
+        long[] cost = cost(canny, minRadius, maxRadius, houghT.step);
+        long grain = Math.max(1, cost[cost.length - 1]/(SPLIT*(long) parallelism));
+        int budget = Math.max(1, HoughTrans.SLICE_BUDGET/parallelism);
+        return pool.invoke(new PeakTask(canny, minRadius, maxRadius, minRadius, maxRadius, cost, grain, budget, tile));
+    }
+
+    /**
+     * transforms all the edges of an image into Hough Space for a single radius, the same as
+     * HoughTrans.accumulator(canny, radius)
+     * @param canny the edge pixels of the image
+     * @param radius the radius of the search space
+     * @return the accumulated pixel values for this radius
+     */
+    public IntPlane accumulator(EdgeList canny, int radius){
+        IntPlane accumulator = new IntPlane(canny.width, canny.height);
+        vote(canny, radius, accumulator.data);
+        return accumulator;
+    }
+
+    /**
+     * preform the Hough circle detection for a single radius, the same as HoughTrans.hough(canny, accumulator, radius)
+     * @param canny the edge pixels of the image
+     * @param toDraw the array the detected circles are drawn into
+     * @param radius the radius of the search space
+     * @return the value of the maximum pixel, this will be used for normalizing the pixel values
+     */
+    public int hough(EdgeList canny, IntPlane toDraw, int radius){
+        int[] slice = new int[canny.width*canny.height];
+        long counter = vote(canny, radius, slice);
+        houghT.reverse(radius, Slice.of(slice), counter, canny.size(), canny.width, canny.height, toDraw.data);
+        return toDraw.max();
+    }
+
+    /**
+     * vote all the edge pixels for a single radius
+     * @param slice receives the votes, it must be all 0
+     * @return the number of votes that were placed
+     */
+    private long vote(EdgeList canny, int radius, int[] slice){
+        int total = canny.size();
+        int size = slice.length;
+        CircleStencil stencil = CircleStencil.get(radius, canny.width);
+        // summing the partials reads chunks*size cells, which is only worth it if there are more votes than that
+        long votes = (long) total*stencil.size();
+        int chunks = (int) Math.min(Math.min(getParallelism(), total/MIN_CHUNK), Math.min(votes/size, Math.max(1, PARTIAL_BUDGET/(long) size)));
+        if(chunks <= 1){
+            long counter = 0;
+            for(int i = 0; i < total; i++){
+                if(i % CHECK == 0){houghT.job.check();}
+                counter += stencil.draw(canny.x(i), canny.y(i), canny.height, slice, 0);
+            }
+            return counter;
+        }
+        // the first chunk votes straight into the slice, the others into their own partials
+        int[][] partials = new int[chunks][];
+        partials[0] = slice;
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for(int c = 0; c < chunks; c++){
+            final int chunk = c;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                int[] votesInto = chunk == 0 ? slice : (partials[chunk] = new int[size]);
+                for(int i = (int) ((long) total*chunk/chunks), to = (int) ((long) total*(chunk + 1)/chunks); i < to; i++){
+                    if(i % CHECK == 0){houghT.job.check();}
+                    stencil.draw(canny.x(i), canny.y(i), canny.height, votesInto, 0);
+                }
+            }));
+        }
+        for(ForkJoinTask<?> task : tasks){pool.execute(task);}
+        for(ForkJoinTask<?> task : tasks){task.join();}
+        return pool.invoke(new ReduceTask(partials, 0, size, Math.max(1 << 14, size/(SPLIT*getParallelism()))));
+    }
+
+    private void run(EdgeList canny, int[] target, int minRadius, int maxRadius, boolean keepMax){
+        if(minRadius > maxRadius){return;}
+        maxRadius = houghT.lastRadius(minRadius, maxRadius);
+        houghT.job.steps((maxRadius - minRadius)/houghT.step + 1);
+        int parallelism = getParallelism();
+        if(minRadius == maxRadius){ // a single radius, split its edge pixels instead
+            int[] slice = new int[target.length];
+            long counter = vote(canny, minRadius, slice);
+            houghT.job.step();
+            if(keepMax){merge(target, slice, true);}
+            else{houghT.reverse(minRadius, Slice.of(slice), counter, canny.size(), canny.width, canny.height, target);}
+            return;
+        }
+        if(parallelism == 1){ // nothing to split, run it on this thread
+            sweep(canny, target, minRadius, maxRadius, keepMax, HoughTrans.SLICE_BUDGET);
+            return;
+        }
+        long[] cost = cost(canny, minRadius, maxRadius, houghT.step);
+        long grain = Math.max(1, cost[cost.length - 1]/(SPLIT*(long) parallelism));
+        // the tasks running at the same time share the slice budget
+        int budget = Math.max(1, HoughTrans.SLICE_BUDGET/parallelism);
+        int[] result = pool.invoke(new RadiusTask(canny, minRadius, maxRadius, minRadius, cost, grain, budget, keepMax));
+        merge(target, result, keepMax);
+    }
+
+    /**
+     * @return the running cost of the swept radii, cost[k] is the cost of the first k of them (minRadius,
+     * minRadius + step, ..)
+     */
+    private static long[] cost(EdgeList canny, int minRadius, int maxRadius, int step){
+        long[] cost = new long[(maxRadius - minRadius)/step + 2];
+        long perSlice = (long) canny.width*canny.height;
+        for(int k = 0; k < cost.length - 1; k++){
+            cost[k + 1] = cost[k] + (long) canny.size()*CircleStencil.get(minRadius + k*step, canny.width).size() + perSlice;
+        }
+        return cost;
+    }
+
+    /**
+     * @return the position of a swept radius in the cost array
+     */
+    private int index(int radius, int minRadius){
+        return (radius - minRadius)/houghT.step;
+    }
+
+    private void sweep(EdgeList canny, int[] target, int minRadius, int maxRadius, boolean keepMax, int budget){
+        if(keepMax){houghT.accumulator(canny, target, minRadius, maxRadius, budget);}
+        else{houghT.hough(canny, target, minRadius, maxRadius, budget);}
+    }
+
+    /**
+     * merge the result of a task into another one
+     */
+    static void merge(int[] into, int[] from, boolean keepMax){
+        if(keepMax){
+            for(int i = 0; i < into.length; i++){
+                if(from[i] > into[i]){into[i] = from[i];}
+            }
+        }else{
+            for(int i = 0; i < into.length; i++){into[i] += from[i];}
+        }
+    }
+
+    /**
+     * finds the peaks of the radii first - last, splitting the range in two (at the middle of its cost) while it is
+     * too costly
+     */
+    @SuppressWarnings("serial")
+    private final class PeakTask extends RecursiveTask<List<Circle>> {
+        final EdgeList canny;
+        final int first, last, minRadius, maxRadius, budget;
+        final long[] cost;
+        final long grain;
+        final Tile tile;
+
+        PeakTask(EdgeList canny, int first, int last, int minRadius, int maxRadius, long[] cost, long grain, int budget, Tile tile){
+            this.canny = canny;
+            this.first = first;
+            this.last = last;
+            this.minRadius = minRadius;
+            this.maxRadius = maxRadius;
+            this.cost = cost;
+            this.grain = grain;
+            this.budget = budget;
+            this.tile = tile;
+        }
+
+        @Override
+        protected List<Circle> compute(){
+            long from = cost[index(first, minRadius)], to = cost[index(last, minRadius) + 1];
+            if(first == last || to - from <= grain){
+                return houghT.peaks(canny, first, last, minRadius, maxRadius, budget, tile);
+            }
+            long middle = from + (to - from)/2;
+            int split = first;
+            int step = houghT.step;
+            while(split < last - step && cost[index(split, minRadius) + 1] < middle){split += step;}
+            PeakTask lower = new PeakTask(canny, first, split, minRadius, maxRadius, cost, grain, budget, tile);
+            lower.fork();
+            List<Circle> peaks = new PeakTask(canny, split + step, last, minRadius, maxRadius, cost, grain, budget, tile).compute();
+            peaks.addAll(lower.join());
+            return peaks;
+        }
+    }
+
+    /**
+     * sums the partial accumulators into the first one over the cells from - to, splitting the range in two while it
+     * is larger than grain
+     * @return the sum of all the votes in the range
+     */
+    @SuppressWarnings("serial")
+    private static final class ReduceTask extends RecursiveTask<Long> {
+        final int[][] partials;
+        final int from, to, grain;
+
+        ReduceTask(int[][] partials, int from, int to, int grain){
+            this.partials = partials;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Long compute(){
+            if(to - from <= grain){
+                int[] sum = partials[0];
+                long counter = 0;
+                for(int i = from; i < to; i++){
+                    int votes = sum[i];
+                    for(int p = 1; p < partials.length; p++){votes += partials[p][i];}
+                    sum[i] = votes;
+                    counter += votes;
+                }
+                return counter;
+            }
+            int middle = (from + to) >>> 1;
+            ReduceTask lower = new ReduceTask(partials, from, middle, grain);
+            lower.fork();
+            long upper = new ReduceTask(partials, middle, to, grain).compute();
+            return upper + lower.join();
+        }
+    }
+
+    /**
+     * sweeps the radii first - last, splitting the range in two (at the middle of its cost) while it is too costly
+     */
+    @SuppressWarnings("serial")
+    private final class RadiusTask extends RecursiveTask<int[]> {
+        final EdgeList canny;
+        final int first, last, minRadius, budget;
+        final long[] cost;
+        final long grain;
+        final boolean keepMax;
+
+        RadiusTask(EdgeList canny, int first, int last, int minRadius, long[] cost, long grain, int budget, boolean keepMax){
+            this.canny = canny;
+            this.first = first;
+            this.last = last;
+            this.minRadius = minRadius;
+            this.cost = cost;
+            this.grain = grain;
+            this.budget = budget;
+            this.keepMax = keepMax;
+        }
+
+        @Override
+        protected int[] compute(){
+            long from = cost[index(first, minRadius)], to = cost[index(last, minRadius) + 1];
+            if(first == last || to - from <= grain){
+                int[] scratch = new int[canny.width*canny.height];
+                sweep(canny, scratch, first, last, keepMax, budget);
+                return scratch;
+            }
+            // the last radius of the lower half is the one the middle of the cost falls into
+            long middle = from + (to - from)/2;
+            int split = first;
+            int step = houghT.step;
+            while(split < last - step && cost[index(split, minRadius) + 1] < middle){split += step;}
+            RadiusTask lower = new RadiusTask(canny, first, split, minRadius, cost, grain, budget, keepMax);
+            RadiusTask upper = new RadiusTask(canny, split + step, last, minRadius, cost, grain, budget, keepMax);
+            lower.fork();
+            int[] result = upper.compute();
+            merge(result, lower.join(), keepMax);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package houghcircledetector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * finds the peaks of the (a, b, r) Hough space while it is being swept, radius by radius. a cell is a peak when it is
+ * above the threshold of its slice and no cell in the 3x3x3 neighbourhood around it (in the slices of the radii
+ * next to it, step apart) has a higher score. the score of a cell is its number of votes over the number of points on the circle
+ * of its radius, so that slices of different radii can be compared. only the last three slices are held, copied in
+ * the storage of the sweep (see Slice), and only the cells above the threshold are looked at further.
+ * given a Tile, only the peaks in its core are found and the thresholds are the ones of the tile
+ * @author Ntokozo Zwane
+ */
+final class PeakFinder implements HoughTrans.SliceVisitor {
+    // circles whose centres and radii are all within SEPARATION of a higher ranked circle are dropped
+    static final int SEPARATION = 2;
+
+    private final int width, height;
+    private final double tuner;
+    // the difference between the radii of the slices visited
+    private final int step;
+    // the radii that peaks are reported for, the radii just outside this range are only used as neighbours
+    private final int from, to;
+    // the tile the slices are the region of, null for a whole image
+    private final Tile tile;
+
+    // the last three slices visited, the slice of radius r is at (r/step) % 3
+    private final Slice[] ring = new Slice[3];
+    private final long[] thresholds = new long[3];
+    private final int[] points = new int[3];
+    private int first = -1, last = -1;
+
+    private final List<Circle> candidates = new ArrayList<>();
+
+    /**
+     * @param from the smallest radius to report peaks for
+     * @param to the largest radius to report peaks for
+     * @param tuner the threshold of a slice is counter/(total*tuner), see HoughTrans
+     * @param step the difference between the radii of the slices that are visited
+     */
+    PeakFinder(int width, int height, int from, int to, double tuner, int step){
+        this(width, height, from, to, tuner, step, null);
+    }
+
+    /**
+     * @param tile the tile the slices are the region of, null for a whole image
+     * @see #PeakFinder(int, int, int, int, double, int)
+     */
+    PeakFinder(int width, int height, int from, int to, double tuner, int step, Tile tile){
+        this.tile = tile;
+        this.width = width;
+        this.height = height;
+        this.from = from;
+        this.to = to;
+        this.tuner = tuner;
+        this.step = step;
+    }
+
+    private int slot(int radius){
+        return (radius/step) % 3;
+    }
+
+    @Override
+    public void visit(int radius, Slice slice, int counter, int total){
+        int k = slot(radius);
+        ring[k] = slice.copy(ring[k]);
+        thresholds[k] = tile != null ? tile.thresholds[radius] : Math.round(counter/((double)total*tuner));
+        points[k] = CircleStencil.get(radius, width).size();
+        if(first < 0){first = radius;}
+        // the slice before this one now has both of its neighbours
+        if(radius > first){peaks(radius - step, radius);}
+        last = radius;
+    }
+
+    /**
+     * @return the peaks of all the visited slices, in no particular order
+     */
+    List<Circle> finish(){
+        if(last >= 0){peaks(last, last);}
+        return candidates;
+    }
+
+    /**
+     * find the peaks of one slice
+     * @param radius the radius of the slice
+     * @param newest the largest radius visited so far
+     */
+    private void peaks(int radius, int newest){
+        if(radius < from || radius > to){return;}
+        int k = slot(radius);
+        long threshold = thresholds[k];
+        int lowest = Math.max(first, radius - step), highest = Math.min(newest, radius + step);
+        int fromX = tile == null ? 0 : tile.fromX, toX = tile == null ? width : tile.toX;
+        int fromY = tile == null ? 0 : tile.fromY, toY = tile == null ? height : tile.toY;
+        ring[k].above(threshold, fromX, fromY, toX, toY, width, (index, votes) -> {
+            int x = index % width, y = index / width;
+            if(isPeak(radius, x, y, votes, lowest, highest)){
+                candidates.add(new Circle(x, y, radius, votes, votes/(double) points[k]));
+            }
+        });
+    }
+
+    private boolean isPeak(int radius, int x, int y, int votes, int lowest, int highest){
+        long own = points[slot(radius)];
+        for(int r = lowest; r <= highest; r += step){
+            int k = slot(r);
+            Slice slice = ring[k];
+            long other = points[k];
+            for(int j = Math.max(0, y - 1); j <= Math.min(height - 1, y + 1); j++){
+                for(int i = Math.max(0, x - 1); i <= Math.min(width - 1, x + 1); i++){
+                    if(r == radius && j == y && i == x){continue;}
+                    // compare votes/points without dividing, ties go to the first cell in (r, y, x) order
+                    long mine = votes*other, theirs = slice.get(j*width + i)*own;
+                    if(theirs > mine){return false;}
+                    if(theirs == mine && (r < radius || (r == radius && (j < y || (j == y && i < x))))){return false;}
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * rank circles by score and drop the ones that are (almost) the same as a higher ranked one
+     * @param candidates the circles
+     * @param separation circles whose centres and radii are all within this distance of a higher ranked circle
+     * are dropped
+     * @param maxCircles the most circles to return
+     * @return the circles, highest score first
+     */
+    static List<Circle> rank(List<Circle> candidates, int separation, int maxCircles){
+        List<Circle> sorted = new ArrayList<>(candidates);
+        Collections.sort(sorted, (a, b) -> {
+            if(a.score != b.score){return a.score > b.score ? -1 : 1;}
+            if(a.r != b.r){return a.r - b.r;}
+            return a.y != b.y ? a.y - b.y : a.x - b.x;
+        });
+        List<Circle> ranked = new ArrayList<>();
+        for(Circle c : sorted){
+            if(ranked.size() >= maxCircles){break;}
+            boolean duplicate = false;
+            for(Circle other : ranked){
+                if(Math.abs(other.x - c.x) <= separation && Math.abs(other.y - c.y) <= separation && Math.abs(other.r - c.r) <= separation){
+                    duplicate = true;
+                    break;
+                }
+            }
+            if(!duplicate){ranked.add(c);}
+        }
+        return ranked;
+    }
+}
@@ -0,0 +1,229 @@
+package houghcircledetector;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * the stages of the detection of one image, each one computed when it is first asked for and kept for the next time.
+ * the result of a stage is keyed by the result of the stage before it (by identity) and by the parameters of the
+ * configuration that the stage itself uses, so asking again with the same parameters returns the kept result, and
+ * changing a parameter only recomputes the stage that uses it and the stages after it (a new result of a stage is a
+ * new input for all the stages after it). for example changing the thresholds reuses the grey, smoothed and gradient
+ * images, and changing the radii only runs the Hough transform again.
+ * the Hough space of the full transform is kept as well (see HoughSpace) if it is small enough, so when the
+ * thresholds change only the edge pixels that changed are voted again, and changing the peak threshold or the most
+ * circles does not vote at all.
+ * only the last result of every stage is kept, and the results are shared between the callers so they must not be
+ * changed. the methods are synchronized, the stages themselves run on the pool of the detector.
+ * every method runs for a Job, which is told the name of each stage that is computed and can be cancelled from
+ * another thread. a cancelled stage throws a CancellationException and keeps nothing, so the next call with the same
+ * parameters computes it again
+ * @author Ntokozo Zwane
+ */
+public class Pipeline {
+
+    private final CircleDetector detector;
+
+    // the pixels of the image, the input of the first stage
+    private int[] argb;
+    private int width, height;
+
+    private final Stage<BytePlane> grey = new Stage<>("Grayscale");
+    private final Stage<BytePlane> smoothed = new Stage<>("Smooth");
+    private final Stage<Gradient> gradient = new Stage<>("Sobel");
+    private final Stage<BytePlane> nonmax = new Stage<>("Nonmaximal suppression");
+    private final Stage<EdgeList> edges = new Stage<>("Hysteresis");
+    private final Stage<IntPlane> accumulator = new Stage<>("Accumulator");
+    private final Stage<IntPlane> radiusAccumulator = new Stage<>("Accumulator");
+    private final Stage<List<Circle>> circles = new Stage<>("Hough");
+    private final Stage<List<Circle>> directed = new Stage<>("Gradient Hough");
+    private final Stage<IntPlane> houghLine = new Stage<>("HoughLine");
+    // the kept Hough space of the last radii searched, null if there is none
+    private HoughSpace space;
+
+    /**
+     * @param detector the detector the stages are run with
+     */
+    public Pipeline(CircleDetector detector){
+        this.detector = detector;
+    }
+
+    /**
+     * the result of one stage and what it was computed from
+     */
+    private static final class Stage<T> {
+        // the name the stage is reported to the job with
+        private final String name;
+        private Object input;
+        private List<Object> parameters;
+        private T result;
+
+        Stage(String name){
+            this.name = name;
+        }
+
+        /**
+         * @param job the job the stage runs for, told the name of the stage if it is computed
+         * @param input the result of the stage before, compared by identity
+         * @param parameters the parameters the stage uses, compared by value
+         * @param compute computes the result if the kept one is not for this input and these parameters
+         * @return the result
+         */
+        T get(Job job, Object input, List<Object> parameters, Supplier<T> compute){
+            if(result == null || this.input != input || !this.parameters.equals(parameters)){
+                job.stage(name);
+                result = compute.get();
+                this.input = input;
+                this.parameters = parameters;
+            }
+            return result;
+        }
+
+        void clear(){
+            input = null;
+            parameters = null;
+            result = null;
+        }
+    }
+
+    /**
+     * set the image the stages are run on, all the kept results are dropped
+     * @param argb the pixels of the image in argb form, row by row. they must not be changed while they are set
+     * @param width the width of the image
+     * @param height the height of the image
+     */
+    public synchronized void setImage(int[] argb, int width, int height){
+        if(argb.length != width*height){throw new IllegalArgumentException("the pixels do not match the size " + width + "x" + height);}
+        this.argb = argb;
+        this.width = width;
+        this.height = height;
+        for(Stage<?> stage : Arrays.asList(grey, smoothed, gradient, nonmax, edges, accumulator, radiusAccumulator, circles, directed, houghLine)){
+            stage.clear();
+        }
+        space = null;
+    }
+
+    private int[] source(){
+        if(argb == null){throw new IllegalStateException("no image set");}
+        return argb;
+    }
+
+    /**
+     * @return the grey value of each pixel, see CircleDetector.grayscale
+     */
+    public synchronized BytePlane grey(DetectionConfig config, Job job){
+        int[] source = source();
+        return grey.get(job, source, Arrays.<Object>asList(config.luma),
+                () -> detector.cannyE(config, job).grayscale(source, width, height));
+    }
+
+    /**
+     * @return the smoothed image, see CircleDetector.smooth
+     */
+    public synchronized BytePlane smoothed(DetectionConfig config, Job job){
+        BytePlane in = grey(config, job);
+        return smoothed.get(job, in, Arrays.<Object>asList(config.kernelSize, config.sigma),
+                () -> detector.cannyE(config, job).filter(in));
+    }
+
+    /**
+     * @return the magnitudes and directions of the derivatives of the smoothed image
+     */
+    public synchronized Gradient gradient(DetectionConfig config, Job job){
+        BytePlane in = smoothed(config, job);
+        return gradient.get(job, in, Arrays.asList(), () -> detector.cannyE(config, job).gradient(in));
+    }
+
+    /**
+     * @return the output of nonmaximal suppression
+     */
+    public synchronized BytePlane nonmax(DetectionConfig config, Job job){
+        Gradient in = gradient(config, job);
+        return nonmax.get(job, in, Arrays.<Object>asList(config.lowThreshold, config.highThreshold),
+                () -> detector.cannyE(config, job).nonMaximSupression(in));
+    }
+
+    /**
+     * @return the edge pixels, see CircleDetector.cannyEdge
+     */
+    public synchronized EdgeList edges(DetectionConfig config, Job job){
+        BytePlane in = nonmax(config, job);
+        Gradient directions = gradient(config, job);
+        return edges.get(job, in, Arrays.asList(), () -> detector.cannyE(config, job).hysteresis(in, directions.direction));
+    }
+
+    /**
+     * @return the Hough accumulator over the radii of the configuration, see CircleDetector.accumulator
+     */
+    public synchronized IntPlane accumulator(DetectionConfig config, Job job){
+        EdgeList in = edges(config, job);
+        return accumulator.get(job, in, Arrays.<Object>asList(config.minRadius, config.lastRadius(width, height), config.radiusStep), () -> {
+            HoughSpace kept = space(in, config, job);
+            if(kept == null){return detector.accumulator(in, config, job);}
+            IntPlane maximum = new IntPlane(width, height);
+            kept.maximum(maximum);
+            return maximum;
+        });
+    }
+
+    /**
+     * @param radius the radius of the search space
+     * @return the Hough accumulator of a single radius
+     */
+    public synchronized IntPlane accumulator(DetectionConfig config, int radius, Job job){
+        EdgeList in = edges(config, job);
+        return radiusAccumulator.get(job, in, Arrays.<Object>asList(radius), () -> detector.accumulator(in, radius, config, job));
+    }
+
+    /**
+     * @return the circles found by the full Hough transform, see CircleDetector.detect
+     */
+    public synchronized List<Circle> circles(DetectionConfig config, Job job){
+        EdgeList in = edges(config, job);
+        return circles.get(job, in, Arrays.<Object>asList(config.minRadius, config.lastRadius(width, height), config.radiusStep, config.tuner, config.maxCircles), () -> {
+            HoughSpace kept = space(in, config, job);
+            if(kept == null){return Collections.unmodifiableList(detector.circles(in, config, job));}
+            return Collections.unmodifiableList(PeakFinder.rank(kept.peaks(config.tuner), PeakFinder.SEPARATION, config.maxCircles));
+        });
+    }
+
+    /**
+     * @param in the edge pixels
+     * @return the kept Hough space of the radii of a configuration, updated to hold the votes of the edge pixels, or
+     * null if it is too large to keep
+     */
+    private HoughSpace space(EdgeList in, DetectionConfig config, Job job){
+        int step = config.radiusStep, last = config.lastRadius(width, height);
+        last = config.minRadius + (last - config.minRadius)/step*step;
+        if(!HoughSpace.fits(width, height, config.minRadius, last, step)){
+            space = null;
+            return null;
+        }
+        if(space == null || !space.holds(width, height, config.minRadius, last, step)){
+            space = null; // let the old one go before the new one is allocated
+            space = new HoughSpace(width, height, config.minRadius, last, step, detector.pool());
+        }
+        space.update(in, job);
+        return space;
+    }
+
+    /**
+     * @return the circles found by the gradient directed Hough transform, see CircleDetector.detectDirected
+     */
+    public synchronized List<Circle> directed(DetectionConfig config, Job job){
+        EdgeList in = edges(config, job);
+        BytePlane smooth = smoothed(config, job);
+        return directed.get(job, in, Arrays.<Object>asList(config.minRadius, config.lastRadius(width, height), config.maxCircles),
+                () -> Collections.unmodifiableList(detector.directed(in, smooth, config, job)));
+    }
+
+    /**
+     * @return the Hough line accumulator
+     */
+    public synchronized IntPlane houghLine(DetectionConfig config, Job job){
+        EdgeList in = edges(config, job);
+        return houghLine.get(job, in, Arrays.asList(), () -> detector.houghLine(in, job));
+    }
+}
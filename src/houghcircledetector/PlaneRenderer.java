@@ -0,0 +1,96 @@
+package houghcircledetector;
+
+import java.util.Arrays;
+
+/**
+ * turns the image planes of the detection engine into pixels that can be displayed or written out, in a single pass
+ * over the plane. the results are plain arrays (one grey byte or one argb int per pixel) that the GUI pushes into an
+ * image with a single setPixels call, rather than setting the pixels one Color at a time. large planes can be shrunk
+ * for display while they are rendered. none of the methods depend on JavaFX
+ * @author Ntokozo Zwane
+ */
+public final class PlaneRenderer {
+
+    private PlaneRenderer(){}
+
+    /**
+     * the smallest whole factor an image has to be shrunk by to fit in a box
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param maxWidth the width of the box, 0 or less for no limit
+     * @param maxHeight the height of the box, 0 or less for no limit
+     * @return the factor, 1 if the image fits as it is
+     */
+    public static int factor(int width, int height, int maxWidth, int maxHeight){
+        int factor = 1;
+        if(maxWidth > 0){factor = Math.max(factor, (width + maxWidth - 1)/maxWidth);}
+        if(maxHeight > 0){factor = Math.max(factor, (height + maxHeight - 1)/maxHeight);}
+        return factor;
+    }
+
+    /**
+     * @return the argb colours of the grey values 0-255, the palette of a rendered grey plane
+     */
+    public static int[] greyPalette(){
+        int[] palette = new int[256];
+        for(int g = 0; g < 256; g++){palette[g] = 0xFF000000 | g << 16 | g << 8 | g;}
+        return palette;
+    }
+
+    /**
+     * render a plane as grey values
+     * @param values the plane
+     * @param normalize true if the values should be distributed throughout the range 0-255, otherwise they are
+     * clamped to that range
+     * @param factor the plane is shrunk by this factor: every factor x factor block becomes one pixel holding the
+     * largest value of the block, so that thin edges and circles stay visible
+     * @return the grey values, (width/factor) x (height/factor) rounded up
+     */
+    public static BytePlane grey(ImagePlane values, boolean normalize, int factor){
+        if(factor < 1){throw new IllegalArgumentException("invalid factor " + factor);}
+        int width = values.getWidth(), height = values.getHeight();
+        int outWidth = (width + factor - 1)/factor, outHeight = (height + factor - 1)/factor;
+        BytePlane output = new BytePlane(outWidth, outHeight);
+        byte[] out = output.data;
+        long max = normalize ? values.max() : 255;
+        if(factor == 1){
+            for(int i = 0, n = width*height; i < n; i++){out[i] = (byte) level(values.get(i), max, normalize);}
+            return output;
+        }
+        // the largest value of each block of a row of blocks, gathered one row of the plane at a time
+        int[] largest = new int[outWidth];
+        for(int by = 0; by < outHeight; by++){
+            Arrays.fill(largest, Integer.MIN_VALUE);
+            for(int y = by*factor, toY = Math.min(height, y + factor); y < toY; y++){
+                for(int x = 0, index = values.index(0, y); x < width; x++, index++){
+                    int value = values.get(index);
+                    if(value > largest[x/factor]){largest[x/factor] = value;}
+                }
+            }
+            for(int bx = 0, index = by*outWidth; bx < outWidth; bx++, index++){out[index] = (byte) level(largest[bx], max, normalize);}
+        }
+        return output;
+    }
+
+    /**
+     * @return the grey level of a value, value*255/max rounded if normalizing, otherwise the value clamped to 0-255
+     */
+    private static int level(int value, long max, boolean normalize){
+        if(!normalize){return CannyEdge.clamp(value);}
+        if(value <= 0 || max <= 0){return 0;}
+        return (int) ((510*(long) value + max)/(2*max));
+    }
+
+    /**
+     * draw circles over an image, every pixel that at least one circle goes through gets the colour
+     * @param argb the pixels of the image in argb form, row by row, they are changed in place
+     * @param circles the drawn circles (see CircleDetector.draw), the same size as the image
+     * @param colour the argb colour of the circles
+     */
+    public static void overlay(int[] argb, IntPlane circles, int colour){
+        int[] toDraw = circles.data;
+        for(int i = 0; i < argb.length; i++){
+            if(toDraw[i] > 0){argb[i] = colour;}
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package houghcircledetector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * coarse to fine Hough circle detection on an image pyramid. every level of the pyramid is the level below it
+ * downsampled by 2, and every level only searches the radii that are too small to be seen well on the level above it:
+ * the full resolution image is searched for the radii minRadius - 3*minRadius, the next level for the (full resolution)
+ * radii 2*minRadius - 6*minRadius, and so on, with the smallest level searching all the remaining radii. as the number
+ * of edge pixels and the size of the Hough space both shrink by 4 per level, this costs a fraction of the full search.
+ * the circles found on a level are then refined one level at a time back to full resolution, each time only searching
+ * a small window of centres and radii around the circle of the level above
+ * @author Ntokozo Zwane
+ */
+public class PyramidHough {
+    // levels are added while the smallest side of the image stays at least this size
+    static final int MIN_LEVEL_SIZE = 64;
+    // every level (but the smallest) searches the radii base - OVERLAP*base, in its own units
+    static final int OVERLAP = 3;
+    // when moving to the level below, the centre and radius are searched within this distance of the doubled ones
+    static final int REFINE_WINDOW = 2;
+
+    // the tuner used for finding the circles on every level (with the default tuner, other tuners are scaled the
+    // same). the circles are checked against the tuner itself at full resolution, so the levels can let through the
+    // weaker circles that only fit the coarse grid of a level poorly
+    static final double LEVEL_TUNER = 2.0;
+
+    private final CannyEdge cannyE;
+
+    private final ForkJoinPool pool;
+
+    private final double tuner;
+    // the radius step at full resolution, it is halved on every level
+    private final int step;
+
+    /**
+     * @param cannyE the edge detector used on every level
+     * @param pool the pool the Hough transform of every level is run on
+     */
+    public PyramidHough(CannyEdge cannyE, ForkJoinPool pool){
+        this(cannyE, pool, HoughTrans.TUNER, 1);
+    }
+
+    /**
+     * @param cannyE the edge detector used on every level
+     * @param pool the pool the Hough transform of every level is run on
+     * @param tuner the tuner of the thresholds, see HoughTrans
+     * @param step the difference between the radii searched at full resolution
+     */
+    PyramidHough(CannyEdge cannyE, ForkJoinPool pool, double tuner, int step){
+        this.cannyE = cannyE;
+        this.pool = pool;
+        this.tuner = tuner;
+        this.step = step;
+    }
+
+    /**
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the number of times the image is downsampled
+     */
+    static int levels(int width, int height){
+        int levels = 0;
+        while(Math.min(width, height)/2 >= MIN_LEVEL_SIZE){
+            width /= 2;
+            height /= 2;
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * downsample an image by 2, each pixel is the (rounded) mean of a 2x2 block. an odd last row or column is dropped
+     * @param grey the image
+     * @return the image at half the size
+     */
+    static BytePlane downsample(BytePlane grey){
+        int width = grey.width/2, height = grey.height/2;
+        BytePlane output = new BytePlane(width, height);
+        byte[] in = grey.data, out = output.data;
+        for(int y = 0, index = 0; y < height; y++){
+            int top = 2*y*grey.width, bottom = top + grey.width;
+            for(int x = 0; x < width; x++, index++){
+                int sum = (in[top + 2*x] & 0xFF) + (in[top + 2*x + 1] & 0xFF) + (in[bottom + 2*x] & 0xFF) + (in[bottom + 2*x + 1] & 0xFF);
+                out[index] = (byte) ((sum + 2) >> 2);
+            }
+        }
+        return output;
+    }
+
+    /**
+     * detect the circles of an image
+     * @param grey the grey pixel values of the image
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @param maxCircles the most circles to return
+     * @return the circles, highest score first
+     */
+    public List<Circle> circles(BytePlane grey, int minRadius, int maxRadius, int maxCircles){
+        List<Circle> found = new ArrayList<>();
+        if(minRadius > maxRadius){return found;}
+        int base = Math.max(1, minRadius);
+        int levels = levels(grey.width, grey.height);
+        // the edge images of every level, the full resolution one first
+        List<BytePlane> edges = new ArrayList<>();
+        BytePlane level = grey;
+        for(int l = 0; l <= levels; l++){
+            if(l > 0){level = downsample(level);}
+            Gradient gradient = cannyE.gradient(cannyE.filter(level));
+            EdgeList canny = cannyE.hysteresis(cannyE.nonMaximSupression(gradient), null);
+            edges.add(canny.plane);
+
+            // the radii of this level, in the units of this level. the level above starts at 2*base (in the units of
+            // this level), but a circle only just larger than that is a poor fit on the level above, so the levels overlap
+            int to = l == levels ? maxRadius >> l : Math.min(OVERLAP*base, maxRadius >> l);
+            if(base > to){continue;}
+            ParallelHough parallelH = new ParallelHough(pool, tuner*LEVEL_TUNER/HoughTrans.TUNER, Math.max(1, step >> l));
+            for(Circle coarse : parallelH.circles(canny, base, to, 4*maxCircles)){
+                Circle circle = refine(coarse, l, edges);
+                if(circle != null && circle.r >= minRadius && circle.r <= maxRadius){found.add(circle);}
+            }
+        }
+        return PeakFinder.rank(found, PeakFinder.SEPARATION, maxCircles);
+    }
+
+    /**
+     * take a circle found on a level back to full resolution
+     * @param circle the circle, in the units of its level
+     * @param level the level the circle was found on
+     * @param edges the edge images of the levels below it
+     * @return the circle at full resolution, or null if it does not have enough edge pixels at full resolution
+     */
+    private Circle refine(Circle circle, int level, List<BytePlane> edges){
+        int x = circle.x, y = circle.y, r = circle.r;
+        int votes = circle.votes, points = CircleStencil.get(r, edges.get(level).width).size();
+        for(int l = level - 1; l >= 0; l--){
+            BytePlane plane = edges.get(l);
+            int bestX = -1, bestY = -1, bestR = -1, bestVotes = -1, bestPoints = 1;
+            for(int cr = Math.max(1, 2*r - REFINE_WINDOW); cr <= 2*r + REFINE_WINDOW; cr++){
+                CircleStencil stencil = CircleStencil.get(cr, plane.width);
+                for(int cy = Math.max(0, 2*y - REFINE_WINDOW); cy <= Math.min(plane.height - 1, 2*y + REFINE_WINDOW); cy++){
+                    for(int cx = Math.max(0, 2*x - REFINE_WINDOW); cx <= Math.min(plane.width - 1, 2*x + REFINE_WINDOW); cx++){
+                        int count = stencil.count(plane, cx, cy);
+                        // compare count/size without dividing, ties go to the first one searched
+                        if((long) count*bestPoints > (long) bestVotes*stencil.size()){
+                            bestX = cx; bestY = cy; bestR = cr; bestVotes = count; bestPoints = stencil.size();
+                        }
+                    }
+                }
+            }
+            x = bestX; y = bestY; r = bestR; votes = bestVotes; points = bestPoints;
+        }
+        // the same threshold as the full search: about 1/tuner of the circle has to be covered by edge pixels
+        if(votes*tuner <= points){return null;}
+        return new Circle(x, y, r, votes, votes/(double) points);
+    }
+}
@@ -0,0 +1,179 @@
+package houghcircledetector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * the randomized Hough circle transform. rather than every edge pixel voting for every circle it could be on, three
+ * edge pixels are picked at random and vote for the one circle that goes through all three of them. the votes are
+ * kept in a sparse accumulator (see SparseAccumulator), and once a circle has a few votes it is checked against the
+ * edge image. a circle that is confirmed has its edge pixels taken out of the ones that are picked from, and the
+ * accumulator is cleared. the work done depends on the number of samples rather than on the range of radii, and
+ * the memory used is about constant, which suits images with a few large circles. half of the samples pick their
+ * pixels from the whole image and half pick them from around the first pixel, so that small circles are found too.
+ * the random numbers are seeded so that an image always gives the same circles
+ * @author Ntokozo Zwane
+ */
+public class RandomizedHough {
+    static final long SEED = 0x5EEDL;
+    // the most samples taken for an image
+    static final int ITERATIONS = 200000;
+    // the search stops after this many samples in a row have not found a circle
+    static final int MISS_LIMIT = 30000;
+    // the votes a circle needs before it is checked against the edge image
+    static final int HITS = 3;
+    // the accumulator is cleared when it holds more cells than this
+    static final int MAX_CELLS = 1 << 16;
+    // sampled pixels closer together than this give a poor estimate of the circle through them
+    static final int MIN_DISTANCE = 4;
+    // the edge pixels within this distance of a confirmed circle are taken out
+    static final int REMOVE_BAND = 2;
+    // every other sample picks its second and third pixels from the cells (of this size) next to the cell of the
+    // first one, which makes it much more likely that all three are on the same small circle
+    static final int SAMPLE_CELL = 32;
+
+    // the tuner of the threshold a circle is checked against, see HoughTrans
+    private final double tuner;
+
+    public RandomizedHough(){
+        this(HoughTrans.TUNER);
+    }
+
+    /**
+     * @param tuner a circle needs about 1/tuner of its points to be edge pixels
+     */
+    RandomizedHough(double tuner){
+        this.tuner = tuner;
+    }
+
+    /**
+     * detect the circles
+     * @param canny the edge pixels of the image
+     * @param minRadius the smallest radius
+     * @param maxRadius the largest radius
+     * @param maxCircles the most circles to return
+     * @return the circles, highest score first
+     */
+    public List<Circle> circles(EdgeList canny, int minRadius, int maxRadius, int maxCircles){
+        int width = canny.width, height = canny.height;
+        int n = canny.size(), remaining = n;
+        // the pixels sorted into cells, pixels are marked rather than taken out of the grid once they are on a circle
+        GradientHough.EdgeGrid grid = new GradientHough.EdgeGrid(canny, SAMPLE_CELL);
+        int[] points = grid.points;
+        boolean[] removed = new boolean[n];
+        Random random = new Random(SEED);
+        SparseAccumulator accumulator = new SparseAccumulator(1024);
+        List<Circle> found = new ArrayList<>();
+        int minDistance = MIN_DISTANCE*MIN_DISTANCE;
+
+        for(int i = 0, misses = 0; i < ITERATIONS && misses < MISS_LIMIT && remaining >= 3 && found.size() < maxCircles; i++, misses++){
+            int a = random.nextInt(n), b, c;
+            if((i & 1) == 0){
+                b = random.nextInt(n);
+                c = random.nextInt(n);
+            }else{
+                b = near(grid, points[a], random);
+                c = near(grid, points[a], random);
+            }
+            if(removed[a] || removed[b] || removed[c]){continue;}
+            int x1 = points[a] & 0xFFFF, y1 = points[a] >>> 16;
+            int x2 = points[b] & 0xFFFF, y2 = points[b] >>> 16;
+            int x3 = points[c] & 0xFFFF, y3 = points[c] >>> 16;
+            if(distance(x1, y1, x2, y2) < minDistance || distance(x2, y2, x3, y3) < minDistance || distance(x1, y1, x3, y3) < minDistance){continue;}
+
+            // the centre is where the perpendicular bisectors of the three pixels cross, none if they are on a line
+            long d = 2*((long) x1*(y2 - y3) + (long) x2*(y3 - y1) + (long) x3*(y1 - y2));
+            if(d == 0){continue;}
+            double s1 = (double) x1*x1 + (double) y1*y1, s2 = (double) x2*x2 + (double) y2*y2, s3 = (double) x3*x3 + (double) y3*y3;
+            double cx = (s1*(y2 - y3) + s2*(y3 - y1) + s3*(y1 - y2))/d;
+            double cy = (s1*(x3 - x2) + s2*(x1 - x3) + s3*(x2 - x1))/d;
+            int x = (int) Math.round(cx), y = (int) Math.round(cy);
+            if(x < 0 || y < 0 || x >= width || y >= height){continue;}
+            int r = (int) Math.round(Math.hypot(x1 - cx, y1 - cy));
+            if(r < minRadius || r > maxRadius){continue;}
+
+            long key = ((long) r << 40) | ((long) y << 20) | x;
+            if(accumulator.add(key, 1) < HITS){
+                if(accumulator.size() > MAX_CELLS){accumulator.clear();}
+                continue;
+            }
+            Circle circle = verify(canny.plane, x, y, r, minRadius, maxRadius, tuner);
+            if(circle == null){
+                // never check this cell again
+                accumulator.set(key, Integer.MIN_VALUE/2);
+                continue;
+            }
+            found.add(circle);
+            remaining -= remove(points, removed, circle);
+            accumulator.clear();
+            misses = 0;
+        }
+        return PeakFinder.rank(found, PeakFinder.SEPARATION, maxCircles);
+    }
+
+    private static int distance(int x1, int y1, int x2, int y2){
+        return (x1 - x2)*(x1 - x2) + (y1 - y2)*(y1 - y2);
+    }
+
+    /**
+     * check a circle against the edge image. the circles next to it (one pixel away in centre and radius) are
+     * checked too, and the one with the highest score is kept
+     * @param tuner the tuner of the threshold, the same as HoughTrans
+     * @return the circle, or null if it does not have enough edge pixels
+     */
+    static Circle verify(BytePlane edges, int x, int y, int r, int minRadius, int maxRadius, double tuner){
+        int bestX = -1, bestY = -1, bestR = -1, bestVotes = -1, bestPoints = 1;
+        for(int cr = Math.max(minRadius, r - 1); cr <= Math.min(maxRadius, r + 1); cr++){
+            CircleStencil stencil = CircleStencil.get(cr, edges.width);
+            for(int cy = Math.max(0, y - 1); cy <= Math.min(edges.height - 1, y + 1); cy++){
+                for(int cx = Math.max(0, x - 1); cx <= Math.min(edges.width - 1, x + 1); cx++){
+                    int count = stencil.count(edges, cx, cy);
+                    // compare count/size without dividing, ties go to the first one checked
+                    if((long) count*bestPoints > (long) bestVotes*stencil.size()){
+                        bestX = cx; bestY = cy; bestR = cr; bestVotes = count; bestPoints = stencil.size();
+                    }
+                }
+            }
+        }
+        if(bestR < 0 || bestVotes*tuner <= bestPoints){return null;}
+        return new Circle(bestX, bestY, bestR, bestVotes, bestVotes/(double) bestPoints);
+    }
+
+    /**
+     * @return the position (in the grid) of a random pixel from the 3x3 cells around the cell of a pixel
+     */
+    private static int near(GradientHough.EdgeGrid grid, int point, Random random){
+        int column = (point & 0xFFFF)/grid.cell, row = (point >>> 16)/grid.cell;
+        int from = Math.max(0, column - 1), to = Math.min(grid.columns - 1, column + 1);
+        // the cells of a row of the block are next to each other in the grid, so each row is one range of pixels
+        int[] starts = new int[3], counts = new int[3];
+        int total = 0;
+        for(int j = -1; j <= 1; j++){
+            if(row + j < 0 || row + j >= grid.rows){continue;}
+            int first = (row + j)*grid.columns;
+            starts[j + 1] = grid.start[first + from];
+            counts[j + 1] = grid.start[first + to + 1] - starts[j + 1];
+            total += counts[j + 1];
+        }
+        int pick = random.nextInt(total); // the block holds at least the pixel itself
+        for(int j = 0; ; j++){
+            if(pick < counts[j]){return starts[j] + pick;}
+            pick -= counts[j];
+        }
+    }
+
+    /**
+     * mark the pixels that lie on a circle as removed
+     * @return the number of pixels that were removed
+     */
+    private static int remove(int[] points, boolean[] removed, Circle circle){
+        int inner = Math.max(0, circle.r - REMOVE_BAND), outer = circle.r + REMOVE_BAND, count = 0;
+        for(int i = 0; i < points.length; i++){
+            if(removed[i]){continue;}
+            int d = distance(points[i] & 0xFFFF, points[i] >>> 16, circle.x, circle.y);
+            if(d >= inner*inner && d <= outer*outer){removed[i] = true; count++;}
+        }
+        return count;
+    }
+}
@@ -0,0 +1,170 @@
+package houghcircledetector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * runs the detection over the frames of a sequence (see FrameSequence) as a stream. the frames go through four
+ * stages that each run on a thread of their own: reading the frame, Canny edge detection, the Hough transform and
+ * handing the result to the caller. the stages are joined by queues that hold at most QUEUE frames, so while the
+ * Hough transform of one frame runs the edges of the next frames are already being found (and they are read before
+ * that), and a slow stage holds back the stages before it rather than letting the frames pile up in memory.
+ * the circles of a frame are mostly the circles of the frame before it, moved a little. so rather than the full
+ * transform, the circles of the previous frame are followed into the frame (see CircleTracker), which only searches
+ * small windows around them. the full transform is still run every rescan frames (and whenever there is nothing to
+ * follow, or the size of the frames changes) to find the circles that have come into view
+ * @author Ntokozo Zwane
+ */
+public class SequenceDetector {
+    // the most frames waiting between two stages
+    static final int QUEUE = 2;
+    // by default the full transform is run every RESCAN frames
+    static final int RESCAN = 10;
+
+    private final CircleDetector detector;
+    private final DetectionConfig config;
+    private final CircleTracker tracker;
+    private final int rescan;
+
+    /**
+     * receives the result of every frame, in order, on the thread that called run(..)
+     */
+    public interface Listener {
+        /**
+         * @param frame the frame
+         * @param circles the circles found in the frame, highest score first
+         * @param rescanned true if the full transform was run on the frame, false if the circles were followed
+         * @throws IOException stops the run
+         */
+        void frame(FrameSequence.Frame frame, List<Circle> circles, boolean rescanned) throws IOException;
+    }
+
+    /**
+     * @param detector the detector the stages run on
+     * @param config the parameters of the detection
+     * @param window the furthest (in x and in y) a centre is followed from one frame to the next, see CircleTracker
+     * @param band the most a radius is followed by from one frame to the next
+     * @param rescan the full transform is run on every rescan-th frame, 1 to run it on every frame
+     */
+    public SequenceDetector(CircleDetector detector, DetectionConfig config, int window, int band, int rescan){
+        if(rescan < 1){throw new IllegalArgumentException("the rescan interval must be at least 1");}
+        this.detector = detector;
+        this.config = config;
+        // the followed frames use the same thresholds as the rescanned ones
+        this.tracker = new CircleTracker(window, band, config.tuner);
+        this.rescan = rescan;
+    }
+
+    /**
+     * a frame on its way through the stages
+     */
+    private static final class Item {
+        // the item that follows the last frame
+        static final Item END = new Item(null);
+
+        final FrameSequence.Frame frame;
+        EdgeList canny;
+        List<Circle> circles;
+        boolean rescanned;
+
+        Item(FrameSequence.Frame frame){
+            this.frame = frame;
+        }
+    }
+
+    /**
+     * the work of one stage, it takes the items from its input queue (if it has one) and puts them on its output
+     * queue
+     */
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    /**
+     * run the detection over all the frames of a sequence
+     * @param frames the frames
+     * @param listener receives the result of every frame
+     * @throws IOException if a frame can not be read, or the listener fails
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void run(FrameSequence frames, Listener listener) throws IOException, InterruptedException {
+        BlockingQueue<Item> read = new ArrayBlockingQueue<>(QUEUE);
+        BlockingQueue<Item> edges = new ArrayBlockingQueue<>(QUEUE);
+        BlockingQueue<Item> found = new ArrayBlockingQueue<>(QUEUE);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(start("read", error, read, () -> {
+            FrameSequence.Frame frame;
+            while((frame = frames.next()) != null){read.put(new Item(frame));}
+        }));
+        threads.add(start("canny", error, edges, () -> {
+            for(Item item; (item = read.take()) != Item.END; ){
+                FrameSequence.Frame frame = item.frame;
+                item.canny = detector.cannyEdge(frame.argb, frame.width, frame.height, config);
+                edges.put(item);
+            }
+        }));
+        threads.add(start("hough", error, found, () -> {
+            List<Circle> previous = Collections.emptyList();
+            int width = -1, height = -1, since = 0;
+            for(Item item; (item = edges.take()) != Item.END; ){
+                FrameSequence.Frame frame = item.frame;
+                boolean full = previous.isEmpty() || since + 1 >= rescan || frame.width != width || frame.height != height;
+                if(full){
+                    item.circles = detector.circles(item.canny, config);
+                    since = 0;
+                }else{
+                    item.circles = tracker.track(item.canny, previous, config.minRadius, config.lastRadius(frame.width, frame.height), config.radiusStep, config.maxCircles);
+                    since++;
+                }
+                item.rescanned = full;
+                item.canny = null; // the edges are not needed any more
+                previous = item.circles;
+                width = frame.width;
+                height = frame.height;
+                found.put(item);
+            }
+        }));
+        try{
+            for(Item item; (item = found.take()) != Item.END; ){listener.frame(item.frame, item.circles, item.rescanned);}
+        }finally{
+            // stops the stages that are still running if the listener failed
+            for(Thread thread : threads){thread.interrupt();}
+        }
+        Throwable failed = error.get();
+        if(failed instanceof IOException){throw (IOException) failed;}
+        if(failed instanceof RuntimeException){throw (RuntimeException) failed;}
+        if(failed instanceof Error){throw (Error) failed;}
+        if(failed != null){throw new IOException(failed);}
+    }
+
+    /**
+     * start a stage on a thread of its own. when the stage is done (or fails) END is put on its output queue, so the
+     * stages after it finish as well
+     * @param error receives the first failure of any stage
+     */
+    private static Thread start(String name, AtomicReference<Throwable> error, BlockingQueue<Item> out, Stage stage){
+        Thread thread = new Thread(() -> {
+            try{
+                stage.run();
+            }catch(InterruptedException e){
+                return;
+            }catch(Throwable e){
+                error.compareAndSet(null, e);
+            }
+            try{
+                out.put(Item.END);
+            }catch(InterruptedException e){
+                // the run has been stopped
+            }
+        }, "sequence-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,25 @@
+package houghcircledetector;
+
+/**
+ * an image plane of signed 16 bit values, used for the derivatives and gradient magnitudes
+ * (these are at most 4*255 and sqrt(2)*4*255 respectively)
+ * @author Ntokozo Zwane
+ */
+public final class ShortPlane extends ImagePlane {
+    
+    public final short[] data;
+    
+    public ShortPlane(int width, int height){
+        super(width, height);
+        data = new short[width*height];
+    }
+    
+    @Override
+    public int get(int index){
+        return data[index];
+    }
+    
+    public void set(int x, int y, int value){
+        data[index(x, y)] = (short) value;
+    }
+}
@@ -0,0 +1,311 @@
+package houghcircledetector;
+
+import java.util.Arrays;
+
+/**
+ * the votes of the slice of one radius of the (a, b, r) Hough space. a cell gets at most one vote from every point of
+ * the circle of its radius (each point is a different edge pixel), so while the circle has at most 65535 points the
+ * cells are held as chars: half the memory of ints, and half the memory traffic of voting, so twice the slices fit
+ * in the same budget. when there are far fewer votes than cells (few edge pixels in a large image) only the cells
+ * that are voted for are held, in a hash table (see SparseAccumulator). the cells never saturate, the storage is
+ * picked so that the largest possible count fits (see kind(..)).
+ * the visitors of a sweep read the cells through the slice (see get(..) and above(..)) rather than as an array, so
+ * they do not depend on the storage, and only the cells voted for are visited when only they are held
+ * @author Ntokozo Zwane
+ */
+abstract class Slice {
+    // the memory a cell voted for takes in the hash table, a key and a count at a load of at most a half (and up to
+    // twice that again after growing)
+    static final int SPARSE_BYTES = 4*(Long.BYTES + Integer.BYTES);
+
+    /**
+     * the kinds of storage
+     */
+    enum Kind {
+        INT(Integer.BYTES), CHAR(Character.BYTES), SPARSE(SPARSE_BYTES);
+
+        // the memory a cell takes (a cell voted for, for SPARSE)
+        final int bytes;
+
+        Kind(int bytes){
+            this.bytes = bytes;
+        }
+    }
+
+    // the number of cells, width*height
+    final int size;
+
+    Slice(int size){
+        this.size = size;
+    }
+
+    /**
+     * pick the storage of the slices of a sweep
+     * @param size the number of cells of a slice
+     * @param votes the most votes placed in a slice (the number of edge pixels times the points of the largest circle)
+     * @param points the number of points on the largest circle, the highest count a cell can get
+     * @return SPARSE if the hash table of the cells voted for is smaller than a slice of chars, otherwise the
+     * smallest dense storage the counts fit in
+     */
+    static Kind kind(int size, long votes, int points){
+        if(votes*SPARSE_BYTES < size*(long) Kind.CHAR.bytes){return Kind.SPARSE;}
+        return dense(points);
+    }
+
+    /**
+     * @param points the number of points on the largest circle, the highest count a cell can get
+     * @return the smallest dense storage the counts fit in
+     */
+    static Kind dense(int points){
+        return points <= Character.MAX_VALUE ? Kind.CHAR : Kind.INT;
+    }
+
+    /**
+     * @param kind the storage
+     * @param size the number of cells
+     * @param votes the most votes that are placed in the slice, used to size the hash table of SPARSE
+     * @return an empty slice
+     */
+    static Slice create(Kind kind, int size, long votes){
+        switch(kind){
+            case CHAR:
+                return new Chars(size);
+            case SPARSE:
+                return new Sparse(size, (int) Math.min(size, votes));
+            default:
+                return new Ints(size);
+        }
+    }
+
+    /**
+     * @return the memory the slice takes, an estimate for SPARSE
+     */
+    static long bytes(Kind kind, int size, long votes){
+        return kind == Kind.SPARSE ? Math.max(1, Math.min(size, votes))*kind.bytes : size*(long) kind.bytes;
+    }
+
+    /**
+     * vote for the cells on the circle around an edge pixel, see CircleStencil.draw(..)
+     * @return the number of votes placed
+     */
+    abstract int draw(CircleStencil stencil, int x, int y, int height);
+
+    /**
+     * take back the votes of an edge pixel, undoing draw(..)
+     * @return the number of votes taken back
+     */
+    abstract int erase(CircleStencil stencil, int x, int y, int height);
+
+    /**
+     * take back all the votes, the memory is kept for reuse
+     */
+    abstract void clear();
+
+    /**
+     * receives the cells of a slice
+     */
+    interface CellVisitor {
+        /**
+         * @param index the index of the cell, y*width + x
+         * @param count the number of votes of the cell
+         */
+        void visit(int index, int count);
+    }
+
+    /**
+     * @param cells the cells of the slice, row by row. the array is used as it is, not copied
+     * @return a slice holding ints
+     */
+    static Slice of(int[] cells){
+        return new Ints(cells);
+    }
+
+    /**
+     * @param index the index of a cell, y*width + x
+     * @return the number of votes of the cell
+     */
+    abstract int get(int index);
+
+    /**
+     * visit the cells in a rectangle whose counts are above a threshold
+     * @param threshold the count a cell has to be above
+     * @param fromX the first column of the rectangle
+     * @param fromY the first row of the rectangle
+     * @param toX the column after the last one
+     * @param toY the row after the last one
+     * @param width the width of the slice
+     * @param visitor receives the cells, in row order unless only the cells voted for are held
+     */
+    abstract void above(long threshold, int fromX, int fromY, int toX, int toY, int width, CellVisitor visitor);
+
+    /**
+     * @param into receives the highest of its own value and the count of the slice for every cell
+     */
+    abstract void max(int[] into);
+
+    /**
+     * @param into a slice of the same kind and size to copy into, or null
+     * @return a slice holding the same counts, into unless it is null
+     */
+    abstract Slice copy(Slice into);
+
+    private static final class Ints extends Slice {
+        final int[] cells;
+
+        Ints(int size){
+            this(new int[size]);
+        }
+
+        Ints(int[] cells){
+            super(cells.length);
+            this.cells = cells;
+        }
+
+        @Override
+        int draw(CircleStencil stencil, int x, int y, int height){
+            return stencil.draw(x, y, height, cells, 0);
+        }
+
+        @Override
+        int erase(CircleStencil stencil, int x, int y, int height){
+            return stencil.erase(x, y, height, cells, 0);
+        }
+
+        @Override
+        void clear(){
+            Arrays.fill(cells, 0);
+        }
+
+        @Override
+        int get(int index){
+            return cells[index];
+        }
+
+        @Override
+        void above(long threshold, int fromX, int fromY, int toX, int toY, int width, CellVisitor visitor){
+            for(int y = fromY; y < toY; y++){
+                for(int index = y*width + fromX, to = y*width + toX; index < to; index++){
+                    if(cells[index] > threshold){visitor.visit(index, cells[index]);}
+                }
+            }
+        }
+
+        @Override
+        void max(int[] into){
+            for(int i = 0; i < size; i++){
+                if(cells[i] > into[i]){into[i] = cells[i];}
+            }
+        }
+
+        @Override
+        Slice copy(Slice into){
+            Ints copy = into == null ? new Ints(size) : (Ints) into;
+            System.arraycopy(cells, 0, copy.cells, 0, size);
+            return copy;
+        }
+    }
+
+    private static final class Chars extends Slice {
+        final char[] cells;
+
+        Chars(int size){
+            super(size);
+            cells = new char[size];
+        }
+
+        @Override
+        int draw(CircleStencil stencil, int x, int y, int height){
+            return stencil.draw(x, y, height, cells);
+        }
+
+        @Override
+        int erase(CircleStencil stencil, int x, int y, int height){
+            return stencil.erase(x, y, height, cells);
+        }
+
+        @Override
+        void clear(){
+            Arrays.fill(cells, (char) 0);
+        }
+
+        @Override
+        int get(int index){
+            return cells[index];
+        }
+
+        @Override
+        void above(long threshold, int fromX, int fromY, int toX, int toY, int width, CellVisitor visitor){
+            for(int y = fromY; y < toY; y++){
+                for(int index = y*width + fromX, to = y*width + toX; index < to; index++){
+                    if(cells[index] > threshold){visitor.visit(index, cells[index]);}
+                }
+            }
+        }
+
+        @Override
+        void max(int[] into){
+            for(int i = 0; i < size; i++){
+                if(cells[i] > into[i]){into[i] = cells[i];}
+            }
+        }
+
+        @Override
+        Slice copy(Slice into){
+            Chars copy = into == null ? new Chars(size) : (Chars) into;
+            System.arraycopy(cells, 0, copy.cells, 0, size);
+            return copy;
+        }
+    }
+
+    private static final class Sparse extends Slice {
+        final SparseAccumulator cells;
+
+        Sparse(int size, int capacity){
+            super(size);
+            cells = new SparseAccumulator(capacity);
+        }
+
+        @Override
+        int draw(CircleStencil stencil, int x, int y, int height){
+            return stencil.draw(x, y, height, cells, 1);
+        }
+
+        @Override
+        int erase(CircleStencil stencil, int x, int y, int height){
+            return stencil.draw(x, y, height, cells, -1);
+        }
+
+        @Override
+        void clear(){
+            cells.clear();
+        }
+
+        @Override
+        int get(int index){
+            return cells.get(index);
+        }
+
+        @Override
+        void above(long threshold, int fromX, int fromY, int toX, int toY, int width, CellVisitor visitor){
+            cells.forEach((key, count) -> {
+                if(count <= threshold){return;}
+                int index = (int) key, x = index % width, y = index / width;
+                if(x >= fromX && x < toX && y >= fromY && y < toY){visitor.visit(index, count);}
+            });
+        }
+
+        @Override
+        void max(int[] into){
+            cells.forEach((key, count) -> {
+                if(count > into[(int) key]){into[(int) key] = count;}
+            });
+        }
+
+        @Override
+        Slice copy(Slice into){
+            Sparse copy = into == null ? new Sparse(size, 0) : (Sparse) into;
+            copy.cells.copy(cells);
+            return copy;
+        }
+    }
+}
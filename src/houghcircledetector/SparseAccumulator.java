@@ -0,0 +1,134 @@
+package houghcircledetector;
+
+import java.util.Arrays;
+
+/**
+ * a Hough accumulator that only stores the cells that have been voted for, as an open addressing hash table from a
+ * (non negative) long key to an int count. the memory used depends on the number of cells voted for rather than on
+ * the size of the Hough space
+ * @author Ntokozo Zwane
+ */
+final class SparseAccumulator {
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private int[] counts;
+    private int size;
+
+    /**
+     * @param capacity the number of cells to make room for, more room is made when needed
+     */
+    SparseAccumulator(int capacity){
+        int slots = Integer.highestOneBit(Math.max(8, 2*capacity - 1)) << 1;
+        keys = new long[slots];
+        counts = new int[slots];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * @return the slot of a key, or of the empty slot where it would go
+     */
+    private int slot(long key){
+        int mask = keys.length - 1;
+        // mix the bits of the key so that keys that only differ in their high bits are spread out too
+        long h = key*0x9E3779B97F4A7C15L;
+        int slot = (int) (h >>> 32) & mask;
+        while(keys[slot] != EMPTY && keys[slot] != key){slot = (slot + 1) & mask;}
+        return slot;
+    }
+
+    /**
+     * add to the count of a cell
+     * @param key the cell
+     * @param votes the number of votes to add
+     * @return the new count of the cell
+     */
+    int add(long key, int votes){
+        int slot = slot(key);
+        if(keys[slot] == EMPTY){
+            if(2*(size + 1) > keys.length){
+                grow();
+                slot = slot(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        return counts[slot] += votes;
+    }
+
+    /**
+     * @param key the cell
+     * @return the count of the cell, 0 if it has never been voted for
+     */
+    int get(long key){
+        int slot = slot(key);
+        return keys[slot] == EMPTY ? 0 : counts[slot];
+    }
+
+    /**
+     * @param key the cell
+     * @param count the new count of the cell
+     */
+    void set(long key, int count){
+        add(key, count - get(key));
+    }
+
+    /**
+     * @return the number of cells that have been voted for
+     */
+    int size(){
+        return size;
+    }
+
+    /**
+     * receives the cells of the accumulator
+     */
+    interface CellVisitor {
+        void visit(long key, int count);
+    }
+
+    /**
+     * visit every cell that has been voted for, in no particular order
+     */
+    void forEach(CellVisitor visitor){
+        for(int i = 0; i < keys.length; i++){
+            if(keys[i] != EMPTY){visitor.visit(keys[i], counts[i]);}
+        }
+    }
+
+    /**
+     * make this accumulator hold the same cells as another one, its memory is reused if it is as large
+     */
+    void copy(SparseAccumulator from){
+        if(keys.length != from.keys.length){
+            keys = new long[from.keys.length];
+            counts = new int[from.keys.length];
+        }
+        System.arraycopy(from.keys, 0, keys, 0, keys.length);
+        System.arraycopy(from.counts, 0, counts, 0, counts.length);
+        size = from.size;
+    }
+
+    /**
+     * forget all the cells, the memory is kept for reuse
+     */
+    void clear(){
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    private void grow(){
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[2*oldKeys.length];
+        counts = new int[2*oldKeys.length];
+        Arrays.fill(keys, EMPTY);
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldKeys[i] == EMPTY){continue;}
+            int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package houghcircledetector;
+
+/**
+ * one tile of an image that is processed a piece at a time (see TiledDetector). the tile is searched in a region of
+ * the image, its core with a halo around it, and only the circles whose centres lie in its core are reported. the
+ * thresholds of the slices are counted over the whole image rather than over the region, so that the peaks of the
+ * core are the same as the ones of the whole image
+ * @author Ntokozo Zwane
+ */
+final class Tile {
+    // the position of the region in the image
+    final int x, y;
+    // the core in the coordinates of the region, from inclusive and to exclusive
+    final int fromX, fromY, toX, toY;
+    // the threshold of the slice of each radius, by radius
+    final long[] thresholds;
+
+    Tile(int x, int y, int fromX, int fromY, int toX, int toY, long[] thresholds){
+        this.x = x;
+        this.y = y;
+        this.fromX = fromX;
+        this.fromY = fromY;
+        this.toX = toX;
+        this.toY = toY;
+        this.thresholds = thresholds;
+    }
+}
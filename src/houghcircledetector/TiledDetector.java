@@ -0,0 +1,201 @@
+package houghcircledetector;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * runs the detection over an image that is too large to hold in memory (or whose planes would be), a tile at a time.
+ * the image is split into tiles, and each tile is searched for the circles whose centres lie in it (its core). every
+ * edge pixel that can vote for such a circle lies within the largest radius of the core, and the edge pixels there
+ * are only exact if the smoothing, the derivative and nonmaximal suppression saw the pixels around them, so the tile
+ * is read from the image file (only its region, see ImageReadParam.setSourceRegion) with a halo of the largest
+ * radius plus the rows and columns the kernel needs. so at most one region is held at a time, however large the
+ * image, which is why the largest radius has to be set rather than left to the size of the image.
+ * the thresholds of the slices depend on all the edge pixels of the image, so they are counted in a first pass over
+ * the tiles (which only runs Canny). the peaks of the cores are then the peaks the whole image would give, and a
+ * circle that crosses the seam between two tiles is found once, by the tile its centre lies in. the peaks of all the
+ * tiles are ranked together, which merges the circles that are nearly the same on both sides of a seam.
+ * the one difference with running the whole image is hysteresis: a chain of weak edge pixels that wanders more than
+ * CHAIN pixels out of a region (and back in) is not followed
+ * @author Ntokozo Zwane
+ */
+public class TiledDetector {
+    // the default side of the core of a tile
+    static final int TILE = 1024;
+    // the rows and columns around a region, beyond the ones the kernel needs, that the chains of hysteresis may use
+    static final int CHAIN = 32;
+
+    private final CircleDetector detector;
+    private final DetectionConfig config;
+    private final int tile;
+
+    /**
+     * @param detector the detector the stages run on
+     * @param config the parameters of the detection, the largest radius must be set
+     * @param tile the side of the core of a tile
+     */
+    public TiledDetector(CircleDetector detector, DetectionConfig config, int tile){
+        if(tile < 1){throw new IllegalArgumentException("the tile size must be at least 1");}
+        if(config.maxRadius == DetectionConfig.AUTO){throw new IllegalArgumentException("the largest radius has to be set, the halo of a tile is as wide");}
+        this.detector = detector;
+        this.config = config;
+        this.tile = tile;
+    }
+
+    /**
+     * run the detection over an image file
+     * @param in the image
+     * @return the circles, highest score first
+     * @throws IOException if the image can not be read
+     */
+    public List<Circle> detect(File in) throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(in);
+        if(stream == null){throw new IOException("unable to open");}
+        try{
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if(!readers.hasNext()){throw new IOException("not a readable image");}
+            ImageReader reader = readers.next();
+            try{
+                // every tile reads the stream again
+                reader.setInput(stream, false);
+                return detect(reader);
+            }finally{
+                reader.dispose();
+            }
+        }finally{
+            stream.close();
+        }
+    }
+
+    /**
+     * run the detection over the first image of a reader
+     */
+    private List<Circle> detect(ImageReader reader) throws IOException {
+        int width = reader.getWidth(0), height = reader.getHeight(0);
+        int minRadius = config.minRadius, maxRadius = config.lastRadius(width, height);
+        long[] thresholds = thresholds(reader, width, height, minRadius, maxRadius);
+        if(thresholds == null){return Collections.emptyList();}
+        ParallelHough parallelH = new ParallelHough(detector.pool(), config.tuner, config.radiusStep, Job.NONE);
+        List<Circle> found = new ArrayList<>();
+        for(int y = 0; y < height; y += tile){
+            for(int x = 0; x < width; x += tile){
+                Rectangle core = new Rectangle(x, y, Math.min(tile, width - x), Math.min(tile, height - y));
+                // the votes of the cells next to the core (the neighbours of its peaks) have to be exact as well
+                Rectangle voting = grow(core, maxRadius + 1, width, height);
+                Rectangle region = grow(voting, halo(), width, height);
+                EdgeList canny = edges(reader, region, voting);
+                Tile t = new Tile(region.x, region.y, core.x - region.x, core.y - region.y,
+                        core.x + core.width - region.x, core.y + core.height - region.y, thresholds);
+                for(Circle c : parallelH.peaks(canny, minRadius, maxRadius, t)){
+                    found.add(new Circle(c.x + t.x, c.y + t.y, c.r, c.votes, c.score));
+                }
+            }
+        }
+        return PeakFinder.rank(found, PeakFinder.SEPARATION, config.maxCircles);
+    }
+
+    /**
+     * @return the rows and columns around a region whose edge pixels are not exact
+     */
+    private int halo(){
+        return GaussianKernel.get(config.kernelSize, config.sigma).radius + 2 + CHAIN;
+    }
+
+    /**
+     * @return the rectangle with size more rows and columns on every side, cut off at the border of the image
+     */
+    private static Rectangle grow(Rectangle r, int size, int width, int height){
+        int x0 = Math.max(0, r.x - size), y0 = Math.max(0, r.y - size);
+        int x1 = (int) Math.min(width, (long) r.x + r.width + size), y1 = (int) Math.min(height, (long) r.y + r.height + size);
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * read a region of the image and find its edge pixels
+     * @param region the region, in the coordinates of the image
+     * @param keep the part of the region whose edge pixels are kept, the others are cleared
+     * @return the edge pixels, in the coordinates of the region
+     */
+    private EdgeList edges(ImageReader reader, Rectangle region, Rectangle keep) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        BufferedImage image = reader.read(0, param);
+        int width = image.getWidth(), height = image.getHeight();
+        CannyEdge cannyE = detector.cannyE(config);
+        BytePlane smoothed = cannyE.filter(cannyE.grayscale(image.getRGB(0, 0, width, height, null, 0, width), width, height));
+        Gradient gradient = cannyE.gradient(smoothed);
+        BytePlane edges = cannyE.hysteresis(cannyE.nonMaximSupression(gradient), null).plane;
+
+        byte[] data = edges.data;
+        int fromX = keep.x - region.x, toX = fromX + keep.width;
+        int fromY = keep.y - region.y, toY = fromY + keep.height;
+        EdgeList canny = new EdgeList(edges, false);
+        for(int y = 0, index = 0; y < height; y++){
+            for(int x = 0; x < width; x++, index++){
+                if(data[index] != (byte) 255){continue;}
+                if(x >= fromX && x < toX && y >= fromY && y < toY){canny.add(x, y, 0);}
+                else{data[index] = 0;}
+            }
+        }
+        return canny;
+    }
+
+    /**
+     * count the edge pixels of the whole image a tile at a time, and from them the threshold of the slice of every
+     * swept radius, counter/(total*tuner) as in HoughTrans. the counter of a radius is the number of votes all the edge
+     * pixels place inside the image, every edge pixel places all the points of its circle except the ones beyond the
+     * border. so rather than the edge pixels themselves, only the number of them at each distance (under maxRadius)
+     * from a border is kept, and the edge pixels close to two borders (in the corners of the image)
+     * @return the thresholds by radius, null if the image has no edge pixels
+     */
+    private long[] thresholds(ImageReader reader, int width, int height, int minRadius, int maxRadius) throws IOException {
+        long total = 0;
+        // side[d] is the number of edge pixels d from a border (counted once for every border they are that close to)
+        long[] side = new long[Math.max(0, maxRadius)];
+        // the edge pixels in the corners, packed as x << 32 | y
+        long[] corners = new long[64];
+        int n = 0;
+        for(int y = 0; y < height; y += tile){
+            for(int x = 0; x < width; x += tile){
+                Rectangle core = new Rectangle(x, y, Math.min(tile, width - x), Math.min(tile, height - y));
+                Rectangle region = grow(core, halo(), width, height);
+                EdgeList canny = edges(reader, region, core);
+                for(int i = 0, size = canny.size(); i < size; i++){
+                    int ex = region.x + canny.x(i), ey = region.y + canny.y(i);
+                    int left = ex, right = width - 1 - ex, top = ey, bottom = height - 1 - ey;
+                    total++;
+                    if(Math.min(left, right) < maxRadius && Math.min(top, bottom) < maxRadius){
+                        if(n == corners.length){corners = Arrays.copyOf(corners, 2*n);}
+                        corners[n++] = (long) ex << 32 | ey;
+                        continue;
+                    }
+                    if(left < maxRadius){side[left]++;}
+                    if(right < maxRadius){side[right]++;}
+                    if(top < maxRadius){side[top]++;}
+                    if(bottom < maxRadius){side[bottom]++;}
+                }
+            }
+        }
+        if(total == 0){return null;}
+        long[] thresholds = new long[Math.max(0, maxRadius) + 1];
+        for(int r = minRadius; r <= maxRadius; r += config.radiusStep){
+            CircleStencil stencil = CircleStencil.get(r, width);
+            long counter = (total - n)*stencil.size();
+            for(int d = 0; d < r; d++){counter -= side[d]*stencil.beyond(d);}
+            for(int i = 0; i < n; i++){counter += stencil.inside((int) (corners[i] >>> 32), (int) corners[i], width, height);}
+            thresholds[r] = Math.round(counter/((double) total*config.tuner));
+        }
+        return thresholds;
+    }
+}